@@ -0,0 +1,348 @@
+package com.github.nxmbit.ferriessimulator;
+
+import javafx.geometry.Rectangle2D;
+import javafx.geometry.VPos;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+import javafx.scene.paint.Paint;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+   Paints the simulation grid, the vehicles and the ferries onto one Canvas,
+   so the scene graph holds a single node instead of a Tile per cell. Cells
+   use the same paints as Tile, the static cells are copied from the cached
+   StaticLayer image instead. Everything is painted from WorldSnapshots:
+   apart from a full redraw, only the cells whose vehicle changed since the
+   last painted snapshot and the cells under the ferries' previous positions
+   are repainted. The canvas is the size of the viewport and only the cells
+   and ferries inside it are painted, any change of the viewport needs a
+   full redraw.
+
+   When cells get smaller than DENSITY_VIEW_CELL_SIZE on screen, single
+   vehicles can't be told apart anymore. The renderer then switches to a
+   density view: each block of cells is tinted by how many vehicles it
+   holds, ferries are drawn without labels and every dock gets a bar showing
+   how full its entering queue is. Block counts come from the snapshot,
+   so only the blocks whose count changed are repainted.
+   Must only be used on the FX thread.
+*/
+public class CanvasRenderer {
+    private static final double DENSITY_VIEW_CELL_SIZE = 4; // pixels
+    private static final double QUEUE_BAR_WIDTH = 8;
+    private static final double QUEUE_BAR_HEIGHT = 32;
+
+    private final Canvas canvas;
+    private final SimulationGrid grid;
+    private final StaticLayer staticLayer;
+    private final Viewport viewport;
+    private double tileSize; // at zoom 1
+    private double cellSize; // on screen, at the zoom of the last full redraw
+    private CellRange visibleCells;
+    private WritableImage staticImage; // null when the static layer would be too large at this zoom
+    private double staticCellSize; // cell size in staticImage, the nearest level at or above cellSize
+    private boolean gridVisible;
+    private final Map<Ferry, Rectangle2D> paintedFerries;
+    private final byte[] paintedColors; // vehicle colors as currently on the canvas
+    private final int blockColumns;
+    private final int[] paintedBlocks; // block vehicle counts as currently on the canvas, only used in the density view
+    private boolean densityView;
+    private Map<Integer, Dock> docks;
+    private long paintedSequence;
+
+    public CanvasRenderer(SimulationGrid grid, StaticLayer staticLayer, Viewport viewport, double tileSize) {
+        this.grid = grid;
+        this.staticLayer = staticLayer;
+        this.viewport = viewport;
+        this.canvas = new Canvas();
+        this.gridVisible = false;
+        this.paintedFerries = new HashMap<>();
+        this.paintedColors = new byte[grid.getWidth() * grid.getHeight()];
+        this.blockColumns = (grid.getWidth() + WorldSnapshot.DENSITY_BLOCK_SIZE - 1) / WorldSnapshot.DENSITY_BLOCK_SIZE;
+        int blockRows = (grid.getHeight() + WorldSnapshot.DENSITY_BLOCK_SIZE - 1) / WorldSnapshot.DENSITY_BLOCK_SIZE;
+        this.paintedBlocks = new int[blockColumns * blockRows];
+        this.docks = Map.of();
+        this.paintedSequence = -1;
+        setTileSize(tileSize);
+    }
+
+    public Canvas getCanvas() {
+        return canvas;
+    }
+
+    public void setTileSize(double tileSize) {
+        this.tileSize = tileSize;
+    }
+
+    public void setGridVisible(boolean gridVisible) {
+        this.gridVisible = gridVisible;
+    }
+
+    // The docks whose queues are shown in the density view
+    public void setDocks(Map<Integer, Dock> docks) {
+        this.docks = docks;
+    }
+
+    /*
+       snapshot is null before a simulation is set up, the map is then painted without vehicles and ferries.
+       Ferries are painted where they are along their legs at the given simulated time, so they move on every
+       frame even when no new snapshot was published.
+    */
+    public void render(WorldSnapshot snapshot, List<Ferry> ferries, long time, boolean fullRedraw) {
+        boolean newSnapshot = snapshot != null && snapshot.getSequence() != paintedSequence;
+        if (!fullRedraw && !newSnapshot && !ferriesMoved(snapshot, ferries, time)) {
+            return; // nothing changed since the last frame
+        }
+
+        GraphicsContext gc = canvas.getGraphicsContext2D();
+        gc.setImageSmoothing(false);
+
+        if (fullRedraw) {
+            applyViewport(gc);
+            Arrays.fill(paintedColors, WorldSnapshot.NO_VEHICLE);
+            Arrays.fill(paintedBlocks, 0);
+            if (staticImage != null && visibleCells.minX() <= visibleCells.maxX() && visibleCells.minY() <= visibleCells.maxY()) {
+                // Only the visible part of the static layer, scaled from its level to the cell size
+                int columns = visibleCells.maxX() - visibleCells.minX() + 1;
+                int rows = visibleCells.maxY() - visibleCells.minY() + 1;
+                gc.drawImage(staticImage, visibleCells.minX() * staticCellSize, visibleCells.minY() * staticCellSize,
+                        columns * staticCellSize, rows * staticCellSize, visibleCells.minX() * cellSize,
+                        visibleCells.minY() * cellSize, columns * cellSize, rows * cellSize);
+            }
+            for (int x = visibleCells.minX(); x <= visibleCells.maxX(); x++) {
+                for (int y = visibleCells.minY(); y <= visibleCells.maxY(); y++) {
+                    if (staticImage == null || !staticLayer.isStatic(x, y)) {
+                        paintCell(gc, x, y);
+                    }
+                }
+            }
+        } else {
+            // Ferries are painted over the cells, so the cells they covered in the last frame are painted again
+            for (Rectangle2D bounds : paintedFerries.values()) {
+                if (densityView) {
+                    paintBlocksUnder(gc, bounds);
+                } else {
+                    paintCellsUnder(gc, bounds);
+                }
+            }
+        }
+        paintedFerries.clear();
+
+        if (snapshot == null) {
+            return;
+        }
+
+        if (densityView) {
+            // Vehicles are only painted as block densities, paintedColors stays empty until the next full redraw
+            snapshot.diffBlocksInto(paintedBlocks, block -> {
+                if (isBlockVisible(block)) {
+                    paintBlock(gc, block);
+                }
+            });
+        } else {
+            int width = grid.getWidth();
+            // Cells outside the viewport are still diffed, they get painted by the full redraw that brings them in
+            snapshot.diffInto(paintedColors, index -> {
+                int x = index % width;
+                int y = index / width;
+                if (visibleCells.contains(x, y)) {
+                    paintCell(gc, x, y);
+                }
+            });
+        }
+        paintedSequence = snapshot.getSequence();
+
+        Rectangle2D screen = getScreenBounds();
+        for (Ferry ferry : ferries) {
+            FerryUpdate state = snapshot.getFerry(ferry.getUpdateSlot());
+            if (state == null) {
+                continue;
+            }
+            Rectangle2D bounds = getFerryBounds(ferry, state, time);
+            if (bounds.intersects(screen)) {
+                paintFerry(gc, ferry, state, bounds);
+                paintedFerries.put(ferry, bounds);
+            }
+        }
+
+        if (densityView) {
+            paintQueueBars(gc, snapshot);
+        }
+    }
+
+    private boolean ferriesMoved(WorldSnapshot snapshot, List<Ferry> ferries, long time) {
+        if (snapshot == null) {
+            return false;
+        }
+        Rectangle2D screen = getScreenBounds();
+        for (Ferry ferry : ferries) {
+            FerryUpdate state = snapshot.getFerry(ferry.getUpdateSlot());
+            if (state == null) {
+                continue;
+            }
+            Rectangle2D bounds = getFerryBounds(ferry, state, time);
+            Rectangle2D painted = paintedFerries.get(ferry);
+            if (painted == null ? bounds.intersects(screen) : !painted.equals(bounds)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Visible part of the canvas, in the zoomed map coordinates everything is painted in
+    private Rectangle2D getScreenBounds() {
+        return new Rectangle2D(viewport.getOffsetX(), viewport.getOffsetY(), viewport.getWidth(), viewport.getHeight());
+    }
+
+    private Rectangle2D getFerryBounds(Ferry ferry, FerryUpdate state, long time) {
+        double zoom = cellSize / tileSize;
+        double size = ferry.getSize() * zoom;
+        return new Rectangle2D(state.xAt(time) * zoom, state.yAt(time) * zoom, size, size);
+    }
+
+    // The canvas covers the viewport, it is translated so cells are painted at their zoomed map position
+    private void applyViewport(GraphicsContext gc) {
+        canvas.setWidth(viewport.getWidth());
+        canvas.setHeight(viewport.getHeight());
+        cellSize = tileSize * viewport.getZoom();
+        densityView = cellSize < DENSITY_VIEW_CELL_SIZE;
+        visibleCells = viewport.getVisibleCells(tileSize, grid.getWidth(), grid.getHeight());
+        staticCellSize = StaticLayer.getCellSize(tileSize, viewport.getZoom());
+        staticImage = staticLayer.getImage(tileSize, viewport.getZoom(), gridVisible);
+
+        gc.setTransform(1, 0, 0, 1, 0, 0);
+        gc.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+        gc.setTransform(1, 0, 0, 1, -viewport.getOffsetX(), -viewport.getOffsetY());
+    }
+
+    private void paintCellsUnder(GraphicsContext gc, Rectangle2D bounds) {
+        int minX = Math.max(visibleCells.minX(), (int) Math.floor(bounds.getMinX() / cellSize));
+        int minY = Math.max(visibleCells.minY(), (int) Math.floor(bounds.getMinY() / cellSize));
+        int maxX = Math.min(visibleCells.maxX(), (int) Math.floor(bounds.getMaxX() / cellSize));
+        int maxY = Math.min(visibleCells.maxY(), (int) Math.floor(bounds.getMaxY() / cellSize));
+        for (int x = minX; x <= maxX; x++) {
+            for (int y = minY; y <= maxY; y++) {
+                paintCell(gc, x, y);
+            }
+        }
+    }
+
+    private void paintBlocksUnder(GraphicsContext gc, Rectangle2D bounds) {
+        double blockSize = cellSize * WorldSnapshot.DENSITY_BLOCK_SIZE;
+        int minX = Math.max(0, (int) Math.floor(bounds.getMinX() / blockSize));
+        int minY = Math.max(0, (int) Math.floor(bounds.getMinY() / blockSize));
+        int maxX = Math.min(blockColumns - 1, (int) Math.floor(bounds.getMaxX() / blockSize));
+        int maxY = Math.min(paintedBlocks.length / blockColumns - 1, (int) Math.floor(bounds.getMaxY() / blockSize));
+        for (int x = minX; x <= maxX; x++) {
+            for (int y = minY; y <= maxY; y++) {
+                paintBlock(gc, y * blockColumns + x);
+            }
+        }
+    }
+
+    private boolean isBlockVisible(int block) {
+        int minX = (block % blockColumns) * WorldSnapshot.DENSITY_BLOCK_SIZE;
+        int minY = (block / blockColumns) * WorldSnapshot.DENSITY_BLOCK_SIZE;
+        return minX <= visibleCells.maxX() && minX + WorldSnapshot.DENSITY_BLOCK_SIZE > visibleCells.minX()
+                && minY <= visibleCells.maxY() && minY + WorldSnapshot.DENSITY_BLOCK_SIZE > visibleCells.minY();
+    }
+
+    // The cells of the block without vehicles, tinted by the share of the block's cells taken by vehicles
+    private void paintBlock(GraphicsContext gc, int block) {
+        int minX = (block % blockColumns) * WorldSnapshot.DENSITY_BLOCK_SIZE;
+        int minY = (block / blockColumns) * WorldSnapshot.DENSITY_BLOCK_SIZE;
+        int maxX = Math.min(grid.getWidth(), minX + WorldSnapshot.DENSITY_BLOCK_SIZE);
+        int maxY = Math.min(grid.getHeight(), minY + WorldSnapshot.DENSITY_BLOCK_SIZE);
+        for (int x = minX; x < maxX; x++) {
+            for (int y = minY; y < maxY; y++) {
+                paintCell(gc, x, y);
+            }
+        }
+
+        int vehicles = paintedBlocks[block];
+        if (vehicles > 0) {
+            double share = (double) vehicles / ((maxX - minX) * (maxY - minY));
+            gc.setFill(Color.rgb(255, 0, 0, Math.min(1, 0.3 + 0.7 * share)));
+            gc.fillRect(minX * cellSize, minY * cellSize, (maxX - minX) * cellSize, (maxY - minY) * cellSize);
+        }
+    }
+
+    // A bar next to each dock's critical section, filled from the bottom as the entering queue fills up
+    private void paintQueueBars(GraphicsContext gc, WorldSnapshot snapshot) {
+        for (Map.Entry<Integer, Dock> entry : docks.entrySet()) {
+            Dock dock = entry.getValue();
+            double fill = snapshot.getDockQueueFill(entry.getKey());
+            double x = (dock.getCriticalSectionCoordinateX() + 1) * cellSize;
+            double y = dock.getCriticalSectionCoordinateY() * cellSize - QUEUE_BAR_HEIGHT;
+
+            gc.setFill(Color.BLACK);
+            gc.fillRect(x, y, QUEUE_BAR_WIDTH, QUEUE_BAR_HEIGHT);
+            gc.setFill(fill < 1 ? Color.ORANGE : Color.RED);
+            gc.fillRect(x + 1, y + 1 + (QUEUE_BAR_HEIGHT - 2) * (1 - fill), QUEUE_BAR_WIDTH - 2, (QUEUE_BAR_HEIGHT - 2) * fill);
+        }
+    }
+
+    private void paintCell(GraphicsContext gc, int x, int y) {
+        byte vehicleColor = paintedColors[grid.index(x, y)];
+        if (vehicleColor != WorldSnapshot.NO_VEHICLE) {
+            fillCell(gc, Tile.VEHICLE_COLORS[vehicleColor], x, y, cellSize, gridVisible);
+        } else if (staticImage != null && staticLayer.isStatic(x, y)) {
+            // Copied from the static layer level, scaled to the cell size
+            gc.drawImage(staticImage, x * staticCellSize, y * staticCellSize, staticCellSize, staticCellSize,
+                    x * cellSize, y * cellSize, cellSize, cellSize);
+        } else {
+            paintTile(gc, grid.getOriginalType(x, y), x, y, cellSize, gridVisible);
+        }
+    }
+
+    // Shared with StaticLayer, so the cached static cells look the same as the ones painted here
+    static void paintTile(GraphicsContext gc, TileType type, int x, int y, double tileSize, boolean gridVisible) {
+        if (ImageLoader.drawImage(gc, type, x * tileSize, y * tileSize, tileSize)) {
+            strokeCell(gc, x, y, tileSize, gridVisible);
+        } else {
+            fillCell(gc, Tile.getPaint(type), x, y, tileSize, gridVisible);
+        }
+    }
+
+    private static void fillCell(GraphicsContext gc, Paint paint, int x, int y, double tileSize, boolean gridVisible) {
+        gc.setFill(paint);
+        gc.fillRect(x * tileSize, y * tileSize, tileSize, tileSize);
+        strokeCell(gc, x, y, tileSize, gridVisible);
+    }
+
+    private static void strokeCell(GraphicsContext gc, int x, int y, double tileSize, boolean gridVisible) {
+        // Each cell strokes its own outline like a Tile does, so repainting a single cell keeps the grid intact
+        if (gridVisible) {
+            gc.setStroke(Color.BLACK);
+            gc.setLineWidth(1);
+            gc.strokeRect(x * tileSize, y * tileSize, tileSize, tileSize);
+        }
+    }
+
+    // Same layout as FerryView: capacity in the corner, vehicle count in the middle, loading time at the bottom
+    private void paintFerry(GraphicsContext gc, Ferry ferry, FerryUpdate state, Rectangle2D bounds) {
+        double size = bounds.getWidth();
+        double x = bounds.getMinX();
+        double y = bounds.getMinY();
+
+        gc.setFill(Color.DARKGRAY);
+        gc.fillRect(x, y, size, size);
+        if (densityView) {
+            return; // the labels couldn't be read at this size
+        }
+
+        gc.setTextBaseline(VPos.TOP);
+        gc.setFill(Color.RED);
+        gc.fillText(String.valueOf(ferry.getCapacity()), x + 5, y + 5);
+        gc.setFill(Color.WHITE);
+        gc.fillText(String.valueOf(state.vehicleCount()), x + size / 2 - 10, y + size / 2 - 10);
+        if (state.loading()) {
+            gc.fillText(state.remainingLoadingTime() / 1000 + " s", x + size / 2 - 10, y + size - 20);
+        }
+    }
+}
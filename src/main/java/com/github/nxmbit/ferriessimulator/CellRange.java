@@ -0,0 +1,8 @@
+package com.github.nxmbit.ferriessimulator;
+
+// Inclusive range of grid cells, empty when max is below min
+public record CellRange(int minX, int minY, int maxX, int maxY) {
+    public boolean contains(int x, int y) {
+        return x >= minX && x <= maxX && y >= minY && y <= maxY;
+    }
+}
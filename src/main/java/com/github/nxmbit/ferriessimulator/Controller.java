@@ -1,37 +1,61 @@
 package com.github.nxmbit.ferriessimulator;
 
-import javafx.animation.KeyFrame;
-import javafx.animation.Timeline;
+import javafx.animation.AnimationTimer;
 import javafx.fxml.FXML;
+import javafx.geometry.Rectangle2D;
 import javafx.scene.control.*;
 import javafx.scene.layout.Pane;
 import javafx.scene.layout.VBox;
 import javafx.stage.Stage;
-import javafx.util.Duration;
 import javafx.fxml.Initializable;
 import javafx.util.StringConverter;
 import javafx.application.HostServices;
+import javafx.application.Platform;
 
 import java.net.URL;
 import java.util.ResourceBundle;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
+import java.util.List;
 import java.util.Set;
-import java.util.EnumSet;
+import javafx.scene.Group;
 import javafx.scene.Node;
+import javafx.scene.image.ImageView;
+import javafx.scene.shape.Rectangle;
+import javafx.scene.transform.Affine;
 
 public class Controller implements Initializable {
     private Simulation simulation;
-    private Timeline timeline;
+    private AnimationTimer frameTimer;
     private final SettingsImport settings;
-    private final MapImport mapImport;
+    private final MapModel mapModel;
     private boolean simulationRunning;
 
     private final Set<Node> currentNodes;
-    private final Set<Node> staticNodes;
-
-    private Tile[][] grid;
-    private TileType[][] OriginalTileTypes;
+    private StaticLayer staticLayer;
+    private ImageView staticLayerView; // the whole static layer as a single node
+    private final Viewport viewport;
+    private Group world; // holds the nodes of the map, zoomed and panned by worldTransform
+    private final Affine worldTransform;
+    private CellRange visibleCells; // of the last full redraw, only these tiles are in the scene
+    private double dragX;
+    private double dragY;
+    private final Map<Integer, FerryView> ferryViews; // by the ferry's update slot
+    private final RendererType rendererType;
+    private final FrameTimeMonitor frameTimeMonitor; // null unless the frameTimeReport setting is on
+    private CanvasRenderer canvasRenderer;
+    private List<Ferry> ferries;
+    private boolean pulseListenersAdded;
+    private boolean fullRedrawNeeded;
+    private byte[] renderedColors; // vehicle colors the tiles currently show
+    private long renderedSequence;
+
+    private TileChunks tiles;
+    private SimulationGrid simulationGrid;
 
     private int gridWidth;
     private int gridHeight;
@@ -58,28 +82,6 @@ public class Controller implements Initializable {
     */
     private HostServices hostServices;
 
-    // Set of tile types that are static and should not be redrawn
-    private static final EnumSet<TileType> StaticTileTypeSet = EnumSet.of(
-            TileType.WATER,
-            TileType.BEACH,
-            TileType.GRASS,
-            TileType.ROAD_DIVIDER,
-            TileType.ROAD_EDGE_LEFT,
-            TileType.ROAD_EDGE_RIGHT,
-            TileType.DOCK_DIVIDER_CROSS_LEFT,
-            TileType.DOCK_DIVIDER_CROSS_RIGHT,
-            TileType.DOCK_DIVIDER_HORIZONTAL,
-            TileType.DOCK_DIVIDER_VERTICAL,
-            TileType.DOCK_EDGE_BOTTOM,
-            TileType.DOCK_EDGE_BOTTOM_CONN_LEFT,
-            TileType.DOCK_EDGE_BOTTOM_CONN_RIGHT,
-            TileType.DOCK_EDGE_CROSS_LEFT,
-            TileType.DOCK_EDGE_CROSS_RIGHT,
-            TileType.DOCK_EDGE_LEFT,
-            TileType.DOCK_EDGE_RIGHT,
-            TileType.DOCK_EDGE_TOP
-    );
-
     @FXML
     private Pane pane;
     @FXML
@@ -109,6 +111,10 @@ public class Controller implements Initializable {
     @FXML
     private Button spawnRightButton;
     @FXML
+    private Slider timeScaleSlider;
+    @FXML
+    private Label timeScaleLabel;
+    @FXML
     private Slider minVehicleSpeedSlider;
     @FXML
     private Label minVehicleSpeedLabel;
@@ -162,22 +168,27 @@ public class Controller implements Initializable {
 
     public Controller() {
         this.settings = new SettingsImport();
-        this.mapImport = new MapImport();
+        this.mapModel = MapModel.load(settings);
         this.simulationRunning = false;
         this.currentNodes = new HashSet<>();
-        this.staticNodes = new HashSet<>();
-
-        this.dock1EnteringCapacity = mapImport.getDock1EnteringCapacity();
-        this.dock1ExitingCapacity = mapImport.getDock1ExitingCapacity();
-        this.dock2EnteringCapacity = mapImport.getDock2EnteringCapacity();
-        this.dock2ExitingCapacity = mapImport.getDock2ExitingCapacity();
+        this.ferryViews = new HashMap<>();
+        this.rendererType = settings.getRenderer();
+        this.frameTimeMonitor = settings.isFrameTimeReport() ? new FrameTimeMonitor(rendererType.name()) : null;
+        this.ferries = new ArrayList<>();
+        this.viewport = new Viewport();
+        this.worldTransform = new Affine();
+
+        this.dock1EnteringCapacity = mapModel.getDock(1).enteringCapacity();
+        this.dock1ExitingCapacity = mapModel.getDock(1).exitingCapacity();
+        this.dock2EnteringCapacity = mapModel.getDock(2).enteringCapacity();
+        this.dock2ExitingCapacity = mapModel.getDock(2).exitingCapacity();
 
         this.minFerryCapacity = settings.getMinRandomFerryCapacity();
         this.maxFerryCapacity = settings.getMaxRandomFerryCapacity();
         this.minFerryLoadingTime = settings.getMinRandomFerryLoadingTime();
         this.maxFerryLoadingTime = settings.getMaxRandomFerryLoadingTime();
-        this.leftFerries = mapImport.getDock1FerryQueueSize();
-        this.rightFerries = mapImport.getDock2FerryQueueSize();
+        this.leftFerries = mapModel.getDock(1).ferryQueueSize();
+        this.rightFerries = mapModel.getDock(2).ferryQueueSize();
         this.ferrySpeed = settings.getFerrySpeed();
     }
 
@@ -186,6 +197,15 @@ public class Controller implements Initializable {
     public void initialize(URL location, ResourceBundle resources) {
         pane.widthProperty().addListener((obs, oldVal, newVal) -> setupIfReady());
         pane.heightProperty().addListener((obs, oldVal, newVal) -> setupIfReady());
+        setupViewportControls();
+        ImageLoader.loadAsync().whenComplete((result, e) -> {
+            if (e != null) {
+                e.printStackTrace();
+            } else {
+                Platform.runLater(this::tileImagesLoaded);
+            }
+        });
+        setupTimeScaleSlider();
         setupSpawnIntervalSlider();
         setupMaxVehiclesSpinner();
         setupDockSpawnProbabilitySlider();
@@ -208,14 +228,114 @@ public class Controller implements Initializable {
         this.hostServices = hostServices;
     }
 
+    // Builds the nodes once the pane has a size, they are kept for every later run and only resized
     private void setupIfReady() {
-        if (pane.getWidth() > 0 && pane.getHeight() > 0) {
+        if (simulationGrid == null && pane.getWidth() > 0 && pane.getHeight() > 0) {
+            addPulseListeners();
             createGrid();
             drawStaticNodes();
             draw();
             setupSimulation();
             updateUIState();
+
+            // Drawn on every pulse, at the display's refresh rate, so ferries can be interpolated smoothly
+            frameTimer = new AnimationTimer() {
+                @Override
+                public void handle(long now) {
+                    draw();
+                }
+            };
+            pane.widthProperty().addListener((obs, oldVal, newVal) -> resizeGrid());
+            pane.heightProperty().addListener((obs, oldVal, newVal) -> resizeGrid());
+        }
+    }
+
+    // Scrolling zooms around the cursor, dragging pans, nothing outside the pane is drawn
+    private void setupViewportControls() {
+        Rectangle clip = new Rectangle();
+        clip.widthProperty().bind(pane.widthProperty());
+        clip.heightProperty().bind(pane.heightProperty());
+        pane.setClip(clip);
+
+        pane.setOnScroll(e -> {
+            viewport.zoomAt(Math.pow(1.1, e.getDeltaY() / 40), e.getX(), e.getY());
+            viewportChanged();
+        });
+        pane.setOnMousePressed(e -> {
+            dragX = e.getX();
+            dragY = e.getY();
+        });
+        pane.setOnMouseDragged(e -> {
+            viewport.panBy(e.getX() - dragX, e.getY() - dragY);
+            dragX = e.getX();
+            dragY = e.getY();
+            viewportChanged();
+        });
+    }
+
+    // The map was drawn with the fallback color where the images go until now
+    private void tileImagesLoaded() {
+        if (staticLayer == null) {
+            return;
+        }
+        staticLayer.invalidate();
+        if (staticLayerView != null) {
+            staticLayerView.setImage(staticLayer.getImage(tileSize, toggleGridButton.isSelected()));
+        }
+        fullRedrawNeeded = true;
+        draw();
+    }
+
+    private void viewportChanged() {
+        if (simulationGrid == null) {
+            return;
+        }
+        updateViewportSize();
+        fullRedrawNeeded = true;
+        draw();
+    }
+
+    // The slider is logarithmic (base 2), so 0.25x to 100x can be set with the same precision across the range
+    private void setupTimeScaleSlider() {
+        timeScaleSlider.setMin(Math.log(SimClock.MIN_TIME_SCALE) / Math.log(2));
+        timeScaleSlider.setMax(Math.log(SimClock.MAX_TIME_SCALE) / Math.log(2));
+        timeScaleSlider.setMajorTickUnit(2);
+        timeScaleSlider.setMinorTickCount(1);
+        timeScaleSlider.setShowTickMarks(true);
+        timeScaleSlider.setShowTickLabels(true);
+
+        timeScaleSlider.setLabelFormatter(new StringConverter<Double>() {
+            @Override
+            public String toString(Double object) {
+                return String.format("%.4gx", Math.pow(2, object));
+            }
+
+            @Override
+            public Double fromString(String string) {
+                return Math.log(Double.parseDouble(string.replace("x", ""))) / Math.log(2);
+            }
+        });
+
+        timeScaleSlider.valueProperty().addListener((observable, oldValue, newValue) -> {
+            timeScaleLabel.setText(String.format("Time Scale: %.2fx", getTimeScale()));
+            // The clock is changed in place, running vehicles, ferries and the spawner pick it up on their next sleep
+            if (simulation != null) {
+                simulation.getContext().getClock().setTimeScale(getTimeScale());
+            }
+        });
+    }
+
+    private double getTimeScale() {
+        return Math.pow(2, timeScaleSlider.getValue());
+    }
+
+    private void addPulseListeners() {
+        if (frameTimeMonitor == null || pulseListenersAdded || pane.getScene() == null) {
+            return;
         }
+        pane.getScene().addPreLayoutPulseListener(frameTimeMonitor::layoutStarted);
+        pane.getScene().addPostLayoutPulseListener(frameTimeMonitor::layoutFinished);
+        pulseListenersAdded = true;
     }
 
     private void setupSpawnIntervalSlider() {
@@ -278,6 +398,8 @@ public class Controller implements Initializable {
 
     private void setupControlsFromSettings() {
         // Set default values from settings
+        timeScaleSlider.setValue(Math.log(settings.getTimeScale()) / Math.log(2));
+        timeScaleLabel.setText(String.format("Time Scale: %.2fx", settings.getTimeScale()));
         spawnIntervalSlider.setValue(settings.getVehiclesSpawnInterval() / 1000.0);
         maxVehiclesSpinner.getValueFactory().setValue(settings.getMaxVehicles());
         dockSpawnProbabilitySlider.setValue(settings.getLeftRightDockSpawnBalance() * 100);
@@ -299,10 +421,10 @@ public class Controller implements Initializable {
 
         ferrySpeedSlider.setValue(settings.getFerrySpeed());
 
-        leftFerriesLabel.setText("Number of Ferries on Left: " + mapImport.getDock1FerryQueueSize());
-        rightFerriesLabel.setText("Number of Ferries on Right: " + mapImport.getDock2FerryQueueSize());
-        leftFerriesSpinner.getValueFactory().setValue(mapImport.getDock1FerryQueueSize());
-        rightFerriesSpinner.getValueFactory().setValue(mapImport.getDock2FerryQueueSize());
+        leftFerriesLabel.setText("Number of Ferries on Left: " + mapModel.getDock(1).ferryQueueSize());
+        rightFerriesLabel.setText("Number of Ferries on Right: " + mapModel.getDock(2).ferryQueueSize());
+        leftFerriesSpinner.getValueFactory().setValue(mapModel.getDock(1).ferryQueueSize());
+        rightFerriesSpinner.getValueFactory().setValue(mapModel.getDock(2).ferryQueueSize());
 
         minFerryCapacitySlider.setValue(settings.getMinRandomFerryCapacity());
         maxFerryCapacitySlider.setValue(settings.getMaxRandomFerryCapacity());
@@ -310,10 +432,10 @@ public class Controller implements Initializable {
         minFerryCapacityLabel.setText("Min Ferry Capacity: " + settings.getMinRandomFerryCapacity());
         maxFerryCapacityLabel.setText("Max Ferry Capacity: " + settings.getMaxRandomFerryCapacity());
 
-        dock1EntryQueueSpinner.getValueFactory().setValue(mapImport.getDock1EnteringCapacity());
-        dock1ExitQueueSpinner.getValueFactory().setValue(mapImport.getDock1ExitingCapacity());
-        dock2EntryQueueSpinner.getValueFactory().setValue(mapImport.getDock2EnteringCapacity());
-        dock2ExitQueueSpinner.getValueFactory().setValue(mapImport.getDock2ExitingCapacity());
+        dock1EntryQueueSpinner.getValueFactory().setValue(mapModel.getDock(1).enteringCapacity());
+        dock1ExitQueueSpinner.getValueFactory().setValue(mapModel.getDock(1).exitingCapacity());
+        dock2EntryQueueSpinner.getValueFactory().setValue(mapModel.getDock(2).enteringCapacity());
+        dock2ExitQueueSpinner.getValueFactory().setValue(mapModel.getDock(2).exitingCapacity());
 
     }
 
@@ -329,24 +451,29 @@ public class Controller implements Initializable {
     }
 
     public void setupSimulation() {
-        simulation = new Simulation();
+        simulation = new Simulation(settings);
         System.out.println("tileSize: " + tileSize);
-        simulation.setup(dockHeight, tileSize, grid, OriginalTileTypes, dock1EnteringCapacity, dock1ExitingCapacity,
+        simulation.setup(dockHeight, tileSize, simulationGrid, dock1EnteringCapacity, dock1ExitingCapacity,
                 dock2EnteringCapacity, dock2ExitingCapacity, ferrySpeed, leftFerries, rightFerries, minFerryLoadingTime,
                 maxFerryLoadingTime, minFerryCapacity, maxFerryCapacity);
-        timeline = new Timeline(new KeyFrame(Duration.millis(90), e -> draw()));
-        timeline.setCycleCount(Timeline.INDEFINITE);
-
-        pane.widthProperty().addListener((obs, oldVal, newVal) -> resizeGrid());
-        pane.heightProperty().addListener((obs, oldVal, newVal) -> resizeGrid());
-
+        simulation.getContext().getClock().setTimeScale(getTimeScale());
+        ferryViews.clear();
+        ferries = new ArrayList<>(simulation.getFerries());
+        if (rendererType == RendererType.NODES) {
+            for (Ferry ferry : ferries) {
+                ferryViews.put(ferry.getUpdateSlot(), new FerryView(ferry));
+            }
+        } else {
+            canvasRenderer.setDocks(simulation.getContext().getDocks());
+        }
+        fullRedrawNeeded = true;
     }
 
     public void startSimulation() {
         if (!simulationRunning) {
             setupSimulation();
             new Thread(simulation).start();
-            timeline.play();
+            frameTimer.start();
             simulationRunning = true;
             updateUIState();
         }
@@ -354,19 +481,29 @@ public class Controller implements Initializable {
 
     public void stopSimulation() {
         if (simulationRunning) {
-            timeline.stop();
+            frameTimer.stop();
             simulation.stop();
-            clearSimulation();
+            resetSimulation();
             simulationRunning = false;
             setupControlsFromSettings();
             updateUIState();
         }
     }
 
-    private void clearSimulation() {
-        pane.getChildren().clear();
-        createGrid();
-        drawStaticNodes();
+    /*
+       The map is the same for every run, so the tiles, the static layer and
+       the renderer are kept, and the full redraw puts the tiles back to their
+       original types. The next run only needs a grid with empty occupancy,
+       which shares the map's tile types. A new grid rather than clearing the
+       old one, so entity threads of the stopped run still finishing a step
+       can't leave a vehicle behind in the next one.
+    */
+    private void resetSimulation() {
+        simulationGrid = new SimulationGrid(mapModel);
+        simulation = null;
+        ferryViews.clear();
+        ferries = new ArrayList<>();
+        fullRedrawNeeded = true;
         draw();
     }
 
@@ -400,48 +537,113 @@ public class Controller implements Initializable {
 
     public void toggleGridVisibility() {
         boolean isGridVisible = toggleGridButton.isSelected();
-        for (Tile[] tileRow : grid) {
-            for (Tile tile : tileRow) {
-                tile.setStrokeVisibility(isGridVisible);
-            }
+        if (rendererType == RendererType.CANVAS) {
+            canvasRenderer.setGridVisible(isGridVisible);
+            fullRedrawNeeded = true;
+            draw();
+            return;
         }
+        tiles.setGridVisible(isGridVisible);
+        staticLayerView.setImage(staticLayer.getImage(tileSize, isGridVisible));
         draw();
     }
 
     private void drawStaticNodes() {
-        for (int i = 0; i < gridWidth; i++) {
-            for (int j = 0; j < gridHeight; j++) {
-                Tile tile = grid[i][j];
-                if (StaticTileTypeSet.contains(tile.getType())) {
-                    staticNodes.add(tile);
-                    pane.getChildren().add(tile);
+        if (rendererType == RendererType.CANVAS) {
+            // The canvas paints every cell itself, it is the only node
+            pane.getChildren().add(canvasRenderer.getCanvas());
+            return;
+        }
+        world = new Group();
+        world.getTransforms().add(worldTransform);
+        pane.getChildren().add(world);
+
+        // The static tiles are never added, their cells come from the static layer image
+        staticLayerView = new ImageView(staticLayer.getImage(tileSize, toggleGridButton.isSelected()));
+        staticLayerView.setSmooth(false);
+        world.getChildren().add(staticLayerView);
+    }
+
+    // Renders only from the latest WorldSnapshot, the live simulation state is never read here
+    private void draw() {
+        long startTime = System.nanoTime();
+        WorldSnapshot snapshot = simulation != null ? simulation.getContext().getSnapshots().latest() : null;
+        long time = simulation != null ? simulation.getContext().getClock().currentTimeMillis() : 0;
+        if (rendererType == RendererType.CANVAS) {
+            canvasRenderer.render(snapshot, ferries, time, fullRedrawNeeded);
+        } else {
+            drawNodes(snapshot, time, fullRedrawNeeded);
+        }
+        fullRedrawNeeded = false;
+        if (frameTimeMonitor != null) {
+            frameTimeMonitor.updateFinished(System.nanoTime() - startTime);
+        }
+    }
+
+    // Only the full redraw changes the set of nodes, otherwise the visible tiles whose vehicle changed are synced
+    private void drawNodes(WorldSnapshot snapshot, long time, boolean fullRedraw) {
+        if (fullRedraw) {
+            Arrays.fill(renderedColors, WorldSnapshot.NO_VEHICLE);
+            visibleCells = viewport.getVisibleCells(tileSize, gridWidth, gridHeight);
+            syncAllNodes();
+        }
+
+        if (snapshot == null) {
+            return;
+        }
+
+        if (fullRedraw || snapshot.getSequence() != renderedSequence) {
+            // Tiles outside the viewport are synced by the full redraw that brings them in
+            snapshot.diffInto(renderedColors, index -> {
+                int x = index % gridWidth;
+                int y = index / gridWidth;
+                if (visibleCells.contains(x, y)) {
+                    Tile tile = tiles.get(x, y);
+                    if (tile != null) {
+                        syncTile(tile);
+                    }
                 }
+            });
+            renderedSequence = snapshot.getSequence();
+        }
+
+        // Ferries move along their legs on every frame, not only when a new snapshot comes in
+
+        Rectangle2D visibleBounds = viewport.getVisibleBounds();
+        for (Map.Entry<Integer, FerryView> entry : ferryViews.entrySet()) {
+            FerryUpdate update = snapshot.getFerry(entry.getKey());
+            if (update == null) {
+                continue;
+            }
+            FerryView view = entry.getValue();
+            double size = view.getFerry().getSize();
+            boolean visible = visibleBounds.intersects(update.xAt(time), update.yAt(time), size, size);
+            view.setVisible(visible);
+            if (visible) {
+                view.update(update, time);
             }
         }
     }
 
-    private void draw() {
+    private void syncAllNodes() {
         Set<Node> newNodes = new HashSet<>();
 
-        for (int i = 0; i < gridWidth; i++) {
-            for (int j = 0; j < gridHeight; j++) {
-                Tile tile = grid[i][j];
-                if (!StaticTileTypeSet.contains(tile.getType())) {
+        for (int i = visibleCells.minX(); i <= visibleCells.maxX(); i++) {
+            for (int j = visibleCells.minY(); j <= visibleCells.maxY(); j++) {
+                Tile tile = tiles.get(i, j);
+                if (tile != null) {
+                    syncTile(tile);
                     newNodes.add(tile);
                 }
             }
         }
 
-        if (simulation != null) {
-            for (Ferry ferry : simulation.getFerries()) {
-                newNodes.add(ferry);
-            }
-        }
+        newNodes.addAll(ferryViews.values());
 
         // Remove nodes that are no longer needed
         currentNodes.removeIf(node -> {
             if (!newNodes.contains(node)) {
-                pane.getChildren().remove(node);
+                world.getChildren().remove(node);
                 return true;
             }
             return false;
@@ -450,34 +652,70 @@ public class Controller implements Initializable {
         // Add new nodes
         for (Node node : newNodes) {
             if (!currentNodes.contains(node)) {
-                pane.getChildren().add(node);
+                world.getChildren().add(node);
                 currentNodes.add(node);
             }
         }
+
+        // Chunks out of view are no longer in the world, so they can be dropped
+        tiles.evict(visibleCells);
+    }
+
+    // Shows the rendered vehicle color of the tile's cell, or its original type when there's no vehicle
+    private void syncTile(Tile tile) {
+        int x = tile.getGridX();
+        int y = tile.getGridY();
+        byte vehicleColor = renderedColors[simulationGrid.index(x, y)];
+        TileType type = vehicleColor == WorldSnapshot.NO_VEHICLE ? simulationGrid.getOriginalType(x, y) : TileType.VEHICLE;
+        if (tile.getType() != type) {
+            tile.setType(type);
+        }
+
+        if (type == TileType.VEHICLE) {
+            tile.setFill(Tile.VEHICLE_COLORS[vehicleColor]);
+        }
     }
 
     private void createGrid() {
-        MapImport gridGenerator = new MapImport();
-        gridWidth = gridGenerator.getGridWidth();
-        gridHeight = gridGenerator.getGridHeight();
-        dockHeight = gridGenerator.getDockHeight();
+        gridWidth = mapModel.getGridWidth();
+        gridHeight = mapModel.getGridHeight();
+        dockHeight = mapModel.getDockHeight();
         tileSize = Math.min(pane.getWidth() / gridWidth, pane.getHeight() / gridHeight);
-        grid = gridGenerator.generate(gridWidth, gridHeight, tileSize);
-        OriginalTileTypes = gridGenerator.getOriginalTileTypes();
+        updateViewportSize();
+        fullRedrawNeeded = true;
+        if (rendererType == RendererType.CANVAS) {
+            simulationGrid = new SimulationGrid(mapModel);
+            staticLayer = new StaticLayer(simulationGrid);
+            canvasRenderer = new CanvasRenderer(simulationGrid, staticLayer, viewport, tileSize);
+            canvasRenderer.setGridVisible(toggleGridButton.isSelected());
+            return;
+        }
+        tiles = new TileChunks(mapModel, tileSize, toggleGridButton.isSelected());
+        simulationGrid = new SimulationGrid(mapModel);
+        staticLayer = new StaticLayer(simulationGrid);
+        renderedColors = new byte[gridWidth * gridHeight];
+    }
+
+    private void updateViewportSize() {
+        viewport.setSize(pane.getWidth(), pane.getHeight());
+        viewport.setContentSize(gridWidth * tileSize, gridHeight * tileSize);
+        worldTransform.setToTransform(viewport.getZoom(), 0, -viewport.getOffsetX(), 0, viewport.getZoom(), -viewport.getOffsetY());
     }
 
     private void resizeGrid() {
         tileSize = Math.min(pane.getWidth() / gridWidth, pane.getHeight() / gridHeight);
-
-        for (int i = 0; i < gridWidth; i++) {
-            for (int j = 0; j < gridHeight; j++) {
-                Tile tile = grid[i][j];
-                tile.setWidth(tileSize);
-                tile.setHeight(tileSize);
-                tile.setX(i * tileSize);
-                tile.setY(j * tileSize);
-            }
+        updateViewportSize();
+        if (rendererType == RendererType.CANVAS) {
+            canvasRenderer.setTileSize(tileSize);
+            fullRedrawNeeded = true;
+            draw();
+            return;
         }
+
+        tiles.setTileSize(tileSize);
+        staticLayerView.setImage(staticLayer.getImage(tileSize, toggleGridButton.isSelected()));
+        fullRedrawNeeded = true;
+        draw();
     }
 
     private void setupMinVehicleSpeedSlider() {
@@ -519,26 +757,24 @@ public class Controller implements Initializable {
     }
 
     private void setupQueueSpinners() {
-        MapImport mapImport = new MapImport();
-
         // Left dock entry queue spinner
         SpinnerValueFactory<Integer> dock1EntryQueueFactory = new SpinnerValueFactory.IntegerSpinnerValueFactory(
-                1, mapImport.getDock1EnteringCapacity(), mapImport.getDock1EnteringCapacity());
+                1, mapModel.getDock(1).enteringCapacity(), mapModel.getDock(1).enteringCapacity());
         dock1EntryQueueSpinner.setValueFactory(dock1EntryQueueFactory);
 
         // Left dock exit queue spinner
         SpinnerValueFactory<Integer> dock1ExitQueueFactory = new SpinnerValueFactory.IntegerSpinnerValueFactory(
-                1, mapImport.getDock1ExitingCapacity(), mapImport.getDock1ExitingCapacity());
+                1, mapModel.getDock(1).exitingCapacity(), mapModel.getDock(1).exitingCapacity());
         dock1ExitQueueSpinner.setValueFactory(dock1ExitQueueFactory);
 
         // Right dock entry queue spinner
         SpinnerValueFactory<Integer> dock2EntryQueueFactory = new SpinnerValueFactory.IntegerSpinnerValueFactory(
-                1, mapImport.getDock2EnteringCapacity(), mapImport.getDock2EnteringCapacity());
+                1, mapModel.getDock(2).enteringCapacity(), mapModel.getDock(2).enteringCapacity());
         dock2EntryQueueSpinner.setValueFactory(dock2EntryQueueFactory);
 
         // Right dock exit queue spinner
         SpinnerValueFactory<Integer> dock2ExitQueueFactory = new SpinnerValueFactory.IntegerSpinnerValueFactory(
-                1, mapImport.getDock2ExitingCapacity(), mapImport.getDock2ExitingCapacity());
+                1, mapModel.getDock(2).exitingCapacity(), mapModel.getDock(2).exitingCapacity());
         dock2ExitQueueSpinner.setValueFactory(dock2ExitQueueFactory);
 
         // Add listeners to spinners to update the queue sizes in simulation
@@ -606,10 +842,10 @@ public class Controller implements Initializable {
         minFerryLoadingTimeSlider.setValue(settings.getMinRandomFerryLoadingTime() / 1000.0);
         maxFerryLoadingTimeSlider.setValue(settings.getMaxRandomFerryLoadingTime() / 1000.0);
 
-        SpinnerValueFactory<Integer> leftFerriesFactory = new SpinnerValueFactory.IntegerSpinnerValueFactory(1, mapImport.getDock1FerryQueueSize(), mapImport.getDock1FerryQueueSize());
+        SpinnerValueFactory<Integer> leftFerriesFactory = new SpinnerValueFactory.IntegerSpinnerValueFactory(1, mapModel.getDock(1).ferryQueueSize(), mapModel.getDock(1).ferryQueueSize());
         leftFerriesSpinner.setValueFactory(leftFerriesFactory);
 
-        SpinnerValueFactory<Integer> rightFerriesFactory = new SpinnerValueFactory.IntegerSpinnerValueFactory(1, mapImport.getDock2FerryQueueSize(), mapImport.getDock2FerryQueueSize());
+        SpinnerValueFactory<Integer> rightFerriesFactory = new SpinnerValueFactory.IntegerSpinnerValueFactory(1, mapModel.getDock(2).ferryQueueSize(), mapModel.getDock(2).ferryQueueSize());
         rightFerriesSpinner.setValueFactory(rightFerriesFactory);
 
         leftFerriesSpinner.valueProperty().addListener((observable, oldValue, newValue) -> {
@@ -0,0 +1,53 @@
+package com.github.nxmbit.ferriessimulator;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.IntConsumer;
+
+/*
+   Bitmap of the grid cells whose content changed since the renderer last
+   looked at them, one bit per cell index. Simulation threads mark cells
+   without locking, the renderer drains the set once per frame, so a frame
+   only costs as much as the cells that actually changed.
+*/
+public class DirtyCellSet {
+    private final AtomicLongArray words;
+    private final int cellCount;
+
+    public DirtyCellSet(int cellCount) {
+        this.cellCount = cellCount;
+        this.words = new AtomicLongArray((cellCount + 63) / 64);
+    }
+
+    public void mark(int index) {
+        int word = index >>> 6;
+        long bit = 1L << index;
+        long current = words.get(word);
+        // Most marks hit a cell that is already dirty in this frame, those don't need a write
+        while ((current & bit) == 0 && !words.compareAndSet(word, current, current | bit)) {
+            current = words.get(word);
+        }
+    }
+
+    // Hands every dirty cell index to the consumer and clears it, cells marked meanwhile show up in the next drain
+    public void drain(IntConsumer consumer) {
+        for (int word = 0; word < words.length(); word++) {
+            if (words.get(word) == 0) {
+                continue;
+            }
+            long bits = words.getAndSet(word, 0);
+            while (bits != 0) {
+                int index = (word << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                if (index < cellCount) {
+                    consumer.accept(index);
+                }
+            }
+        }
+    }
+
+    public void clear() {
+        for (int word = 0; word < words.length(); word++) {
+            words.set(word, 0);
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package com.github.nxmbit.ferriessimulator;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/*
+   Runs the simulation as a sequence of timestamped events taken from a
+   priority queue, jumping straight from one event to the next instead of
+   sleeping in between, on a manually advanced SimClock. A whole day of
+   operation takes seconds. Vehicles and ferries keep their own rules:
+
+   - A ferry only has events where something happens to it. A loading period
+     is one FERRY_DEPARTURE at its end, brought forward when the ferry fills
+     up, with a VEHICLE_BOARDING for each vehicle in between. A crossing is a
+     FERRY_MOVE at the end of each leg and a FERRY_ARRIVAL at the dock, the
+     legs take as long as the ferry steps would. A ferry parked on a dock
+     queue gets no events, it's woken with DOCK_AVAILABLE whenever another
+     ferry has moved on.
+   - A vehicle driving along the road steps once per cell, as the cells it
+     can claim depend on the vehicles around it. In front of the critical
+     section it stops until a ferry loads at the dock or boards the vehicle
+     before it, then gets a CRITICAL_SECTION_ENTRY. On board it gets no events
+     until the ferry unloads it.
+
+   Pending ferry events are replaced rather than removed, an event that isn't
+   the ferry's latest is skipped.
+
+   A run where no vehicle boarded or arrived for STALL_TIMEOUT while vehicles
+   are out is stuck for good, it is stopped and its statistics marked stalled.
+*/
+public class DiscreteEventEngine {
+    private static final long STALL_TIMEOUT = 3_600_000;
+
+    private final SimulationContext context;
+    private final PriorityQueue<SimEvent> events;
+    private final Queue<Vehicle> spawnedVehicles; // vehicles spawned since the last event, possibly from other threads
+    private final List<Ferry> ferries;
+    private final Map<Ferry, Long> ferryEvents; // sequence of each ferry's pending event, parked ferries have none
+    private final List<Vehicle> waitingVehicles; // stopped in front of a critical section
+    private VehicleSpawner vehicleSpawner;
+    private long frameInterval;
+    private Runnable frameCapture;
+    private final SimClock clock;
+    private long time;
+    private long sequence;
+    private volatile boolean running;
+
+    public DiscreteEventEngine(SimulationContext context, List<Ferry> ferries) {
+        this.context = context;
+        this.events = new PriorityQueue<>(Comparator.comparingLong(SimEvent::time).thenComparingLong(SimEvent::sequence));
+        this.spawnedVehicles = new ConcurrentLinkedQueue<>();
+        this.ferries = ferries;
+        this.ferryEvents = new HashMap<>();
+        this.waitingVehicles = new ArrayList<>();
+        this.clock = context.getClock();
+        this.time = clock.currentTimeMillis();
+        this.sequence = 0;
+    }
+
+    public void setVehicleSpawner(VehicleSpawner vehicleSpawner) {
+        this.vehicleSpawner = vehicleSpawner;
+    }
+
+    // Runs frameCapture every frameInterval of simulated time, between the events of that moment
+    public void setFrameCapture(long frameInterval, Runnable frameCapture) {
+        this.frameInterval = frameInterval;
+        this.frameCapture = frameCapture;
+    }
+
+    // Called by the spawner for every new vehicle, its first step is scheduled after the usual start delay
+    public void vehicleSpawned(Vehicle vehicle) {
+        spawnedVehicles.add(vehicle);
+    }
+
+    public void run(long duration) {
+        running = true;
+        long endTime = time + duration;
+
+        synchronized (ferries) {
+            for (Ferry ferry : ferries) {
+                scheduleFerry(time, ferryEventType(ferry), ferry);
+            }
+        }
+        schedule(time, SimEventType.VEHICLE_ARRIVAL, null, null);
+        if (frameCapture != null) {
+            schedule(time, SimEventType.FRAME_CAPTURE, null, null);
+        }
+
+        try {
+            while (running) {
+                scheduleSpawnedVehicles();
+                SimEvent event = events.peek();
+                if (event == null || event.time() > endTime) {
+                    time = endTime;
+                    clock.advanceTo(time);
+                    break;
+                }
+                events.poll();
+                time = event.time();
+                clock.advanceTo(time);
+                process(event);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            running = false;
+        }
+    }
+
+    public void stop() {
+        running = false;
+    }
+
+    private void process(SimEvent event) throws InterruptedException {
+        switch (event.type()) {
+            case VEHICLE_ARRIVAL:
+                if (isStalled()) {
+                    context.getStatistics().runStalled();
+                    running = false;
+                    break;
+                }
+                vehicleSpawner.trySpawnVehicle();
+                schedule(time + vehicleSpawner.getSpawnInterval(), SimEventType.VEHICLE_ARRIVAL, null, null);
+                break;
+            case VEHICLE_STEP:
+            case CRITICAL_SECTION_ENTRY:
+                stepVehicle(event.vehicle());
+                break;
+            case FERRY_DEPARTURE:
+            case FERRY_MOVE:
+            case FERRY_ARRIVAL:
+            case DOCK_AVAILABLE:
+            case VEHICLE_BOARDING:
+                Long pending = ferryEvents.get(event.ferry());
+                if (pending != null && pending == event.sequence()) {
+                    stepFerry(event.ferry());
+                }
+                break;
+            case FRAME_CAPTURE:
+                frameCapture.run();
+                schedule(time + frameInterval, SimEventType.FRAME_CAPTURE, null, null);
+                break;
+        }
+    }
+
+    private void stepVehicle(Vehicle vehicle) throws InterruptedException {
+        if (!vehicle.isRunning()) {
+            return;
+        }
+        long nextStep = vehicle.step();
+        if (!vehicle.isRunning()) {
+            return;
+        }
+
+        if (vehicle.isOnFerry()) {
+            // Just entered the critical section, the ferry loading at the dock boards it right away
+            for (Ferry ferry : ferries) {
+                if (ferry.isLoadingAt(vehicle.getDock())) {
+                    scheduleFerry(time, SimEventType.VEHICLE_BOARDING, ferry);
+                }
+            }
+        } else if (vehicle.isWaitingForCriticalSection()) {
+            waitingVehicles.add(vehicle);
+        } else {
+            schedule(time + nextStep, SimEventType.VEHICLE_STEP, vehicle, null);
+        }
+    }
+
+    private void stepFerry(Ferry ferry) {
+        if (!ferry.isRunning()) {
+            ferryEvents.remove(ferry);
+            return;
+        }
+        List<Vehicle> unloaded = ferry.isUnloading() ? List.copyOf(ferry.getVehiclesOnBoard()) : List.of();
+        long nextStep = ferry.step();
+
+        for (Vehicle vehicle : unloaded) {
+            schedule(time, SimEventType.VEHICLE_STEP, vehicle, null);
+        }
+
+        if (nextStep == Ferry.IDLE) {
+            ferryEvents.remove(ferry);
+            return;
+        }
+        scheduleFerry(time + nextStep, ferryEventType(ferry), ferry);
+
+        // The ferry is loading, or has boarded a vehicle and freed the critical section
+        Iterator<Vehicle> iterator = waitingVehicles.iterator();
+        while (iterator.hasNext()) {
+            Vehicle vehicle = iterator.next();
+            if (!vehicle.isRunning()) {
+                iterator.remove();
+            } else if (ferry.isLoadingAt(vehicle.getDock())) {
+                iterator.remove();
+                schedule(time, SimEventType.CRITICAL_SECTION_ENTRY, vehicle, null);
+            }
+        }
+
+        // The ferry may have left a dock that parked ferries wait for
+        for (Ferry parked : ferries) {
+            if (!ferryEvents.containsKey(parked)) {
+                scheduleFerry(time, SimEventType.DOCK_AVAILABLE, parked);
+            }
+        }
+    }
+
+    private static SimEventType ferryEventType(Ferry ferry) {
+        if (ferry.isLoading()) {
+            return SimEventType.FERRY_DEPARTURE;
+        }
+        if (ferry.isQueueing()) {
+            return SimEventType.DOCK_AVAILABLE;
+        }
+        return ferry.isArriving() ? SimEventType.FERRY_ARRIVAL : SimEventType.FERRY_MOVE;
+    }
+
+    private boolean isStalled() {
+        return context.getVehicles().size() > 0 && context.getStatistics().getTimeSinceProgress() > STALL_TIMEOUT;
+    }
+
+    private void scheduleSpawnedVehicles() {
+        Vehicle vehicle;
+        while ((vehicle = spawnedVehicles.poll()) != null) {
+            schedule(time + Vehicle.START_DELAY, SimEventType.VEHICLE_STEP, vehicle, null);
+        }
+    }
+
+    private void schedule(long eventTime, SimEventType type, Vehicle vehicle, Ferry ferry) {
+        events.add(new SimEvent(eventTime, sequence++, type, vehicle, ferry));
+    }
+
+    // Replaces the ferry's pending event, if it has one
+    private void scheduleFerry(long eventTime, SimEventType type, Ferry ferry) {
+        ferryEvents.put(ferry, sequence);
+        schedule(eventTime, type, null, ferry);
+    }
+}
+
+// Events with the same time run in the order they were scheduled
+record SimEvent(long time, long sequence, SimEventType type, Vehicle vehicle, Ferry ferry) {
+}
+
+enum SimEventType {
+    VEHICLE_ARRIVAL, // the spawner tries to add a vehicle
+    VEHICLE_STEP, // a vehicle moves on by one cell
+    CRITICAL_SECTION_ENTRY, // a vehicle stopped in front of the critical section tries to enter it
+    VEHICLE_BOARDING, // the ferry loading at the dock boards the vehicle in the critical section
+    FERRY_DEPARTURE, // the end of a loading period, the ferry departs or starts another period
+    FERRY_MOVE, // a ferry reaches the end of a leg or changes state
+    FERRY_ARRIVAL, // a ferry reaches a dock or unloads there
+    DOCK_AVAILABLE, // a ferry parked on a dock queue checks whether the dock is free
+    FRAME_CAPTURE
+}
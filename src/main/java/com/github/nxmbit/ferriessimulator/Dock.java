@@ -9,9 +9,12 @@ import java.util.concurrent.locks.ReentrantLock;
 
 public class Dock {
     private  Semaphore enteringSemaphore;
+    private final int enteringCapacity;
     private  Semaphore exitingSemaphore;
+    private final int exitingCapacity;
     private final Lock criticalSectionLock;
     private final Lock dockLock;
+    private final Lock ferryQueueLock;
     private final Condition criticalSectionCondition;
     private final Condition dockAvailableCondition;
     private final ConcurrentLinkedQueue<Vehicle> enteringQueue;
@@ -35,15 +38,23 @@ public class Dock {
     private final int laneToNextDockEndY;
     private final int goDownToNextDockQueueX;
 
+    // Ferries stepped by an engine cannot await dockAvailableCondition, they park here and poll instead
+    private int parkedFerries;
+    private int pendingDockSignals;
+
 
     public Dock(int enteringCapacity, int exitingCapacity, double ferryCoordinateX, double ferryCoordinateY, int criticalSectionCoordinateX,
                 int criticalSectionCoordinateY, int criticalSectionReturnCoordinateX, int criticalSectionReturnCoordinateY,
                 int ferryQueueSize, int ferryQueueCoordinateX, int ferryQueueCoordinateY, int laneToNextDockStartX, int laneToNextDockStartY,
                 int laneToNextDockEndX, int laneToNextDockEndY, int goDownToNextDockQueueX) {
         this.enteringSemaphore = new Semaphore(enteringCapacity);
+        this.enteringCapacity = enteringCapacity;
         this.exitingSemaphore = new Semaphore(exitingCapacity);
+        this.exitingCapacity = exitingCapacity;
         this.criticalSectionLock = new ReentrantLock();
         this.dockLock = new ReentrantLock();
+        // A monitor here would pin the carrier of a virtual thread ferry while it's held, a ReentrantLock doesn't
+        this.ferryQueueLock = new ReentrantLock();
         this.criticalSectionCondition = criticalSectionLock.newCondition();
         this.dockAvailableCondition = dockLock.newCondition();
         this.enteringQueue = new ConcurrentLinkedQueue<>();
@@ -65,6 +76,8 @@ public class Dock {
         this.laneToNextDockEndX = laneToNextDockEndX;
         this.laneToNextDockEndY = laneToNextDockEndY;
         this.goDownToNextDockQueueX = goDownToNextDockQueueX;
+        this.parkedFerries = 0;
+        this.pendingDockSignals = 0;
     }
 
     public boolean canEnterEnteringQ() {
@@ -103,6 +116,14 @@ public class Dock {
         return exitingQueue.poll();
     }
 
+    // Share of the entering queue that is taken, from 0 to 1
+    public double getEnteringQueueFill() {
+        if (enteringCapacity == 0) {
+            return 0;
+        }
+        return Math.clamp((double) (enteringCapacity - enteringSemaphore.availablePermits()) / enteringCapacity, 0, 1);
+    }
+
     public boolean hasQueuedEnteringVehicles() {
         return !enteringQueue.isEmpty();
     }
@@ -200,26 +221,41 @@ public class Dock {
         ferryQueue.add(ferry);
     }
 
-    public synchronized void addFerryToQueue(Ferry ferry) {
-        ferryQueue.add(ferry);
-        updateQueuePositions();
+    public void addFerryToQueue(Ferry ferry) {
+        ferryQueueLock.lock();
+        try {
+            ferryQueue.add(ferry);
+            updateQueuePositions();
+        } finally {
+            ferryQueueLock.unlock();
+        }
     }
 
     // Metoda usuwania promu z kolejki
-    public synchronized Ferry pollFerryFromQueue() {
-        Ferry ferry = ferryQueue.poll();
-        updateQueuePositions();
-        return ferry;
-    }
-
-    public synchronized void updateQueuePositions() {
-        int position = 0;
-        boolean notLoading;
-        for (Ferry ferry : ferryQueue) {
-            notLoading = ferry.setQueuePosition(position++);
-            if (!notLoading) {
-                position--;
+    public Ferry pollFerryFromQueue() {
+        ferryQueueLock.lock();
+        try {
+            Ferry ferry = ferryQueue.poll();
+            updateQueuePositions();
+            return ferry;
+        } finally {
+            ferryQueueLock.unlock();
+        }
+    }
+
+    public void updateQueuePositions() {
+        ferryQueueLock.lock();
+        try {
+            int position = 0;
+            boolean notLoading;
+            for (Ferry ferry : ferryQueue) {
+                notLoading = ferry.setQueuePosition(position++);
+                if (!notLoading) {
+                    position--;
+                }
             }
+        } finally {
+            ferryQueueLock.unlock();
         }
     }
 
@@ -237,6 +273,33 @@ public class Dock {
         dockLock.lock();
         try {
             dockAvailableCondition.signal();
+            // Like a condition signal, wake at most one parked ferry and drop the signal if none is parked
+            if (pendingDockSignals < parkedFerries) {
+                pendingDockSignals++;
+            }
+        } finally {
+            dockLock.unlock();
+        }
+    }
+
+    public void parkFerry() {
+        dockLock.lock();
+        try {
+            parkedFerries++;
+        } finally {
+            dockLock.unlock();
+        }
+    }
+
+    public boolean tryUnparkFerry() {
+        dockLock.lock();
+        try {
+            if (pendingDockSignals == 0) {
+                return false;
+            }
+            pendingDockSignals--;
+            parkedFerries--;
+            return true;
         } finally {
             dockLock.unlock();
         }
@@ -267,10 +330,32 @@ public class Dock {
         this.isFerryAtDock.set(isFerryAtDock);
     }
 
+    // Empties the dock and wakes every vehicle and ferry waiting on it, so the threads of a stopped simulation can finish
     public void reset() {
-        enteringSemaphore.release(enteringSemaphore.availablePermits());
-        exitingSemaphore.release(exitingSemaphore.availablePermits());
+        enteringSemaphore.drainPermits();
+        enteringSemaphore.release(enteringCapacity);
+        exitingSemaphore.drainPermits();
+        exitingSemaphore.release(exitingCapacity);
         enteringQueue.clear();
         exitingQueue.clear();
+        isFerryAtDock.set(false);
+
+        criticalSectionLock.lock();
+        try {
+            criticalSectionVehicle = null;
+            criticalSectionCondition.signalAll();
+        } finally {
+            criticalSectionLock.unlock();
+        }
+
+        dockLock.lock();
+        try {
+            ferryQueue.clear();
+            parkedFerries = 0;
+            pendingDockSignals = 0;
+            dockAvailableCondition.signalAll();
+        } finally {
+            dockLock.unlock();
+        }
     }
 }
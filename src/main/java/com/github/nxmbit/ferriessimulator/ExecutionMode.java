@@ -0,0 +1,19 @@
+package com.github.nxmbit.ferriessimulator;
+
+public enum ExecutionMode {
+    THREADS(true), // each vehicle and each ferry runs in its own thread and paces itself with sleeps
+    VIRTUAL_THREADS(true), // same as THREADS, but on virtual threads so thousands of vehicles don't need thousands of OS threads
+    TICK_ENGINE(false), // a single scheduler advances all vehicles and ferries in fixed simulation steps
+    DISCRETE_EVENT(false); // timestamped events are processed in order as fast as possible, without waiting for the wall clock
+
+    private final boolean entityThreads;
+
+    ExecutionMode(boolean entityThreads) {
+        this.entityThreads = entityThreads;
+    }
+
+    // When false, entities are stepped from outside and must never sleep or block on a condition
+    public boolean usesEntityThreads() {
+        return entityThreads;
+    }
+}
@@ -8,9 +8,10 @@ import javafx.scene.image.Image;
 import javafx.stage.Stage;
 
 public class FerriesSimulator extends Application {
-
     @Override
     public void start(Stage primaryStage) throws Exception {
+        // The tile images are decoded while the window is built, the map is drawn without them until they're ready
+        ImageLoader.loadAsync();
         FXMLLoader loader = new FXMLLoader(getClass().getResource("simulation.fxml"));
         Parent root = loader.load();
 
@@ -1,40 +1,53 @@
 package com.github.nxmbit.ferriessimulator;
 
-import javafx.application.Platform;
-import javafx.scene.layout.Pane;
-import javafx.scene.paint.Color;
-import javafx.scene.shape.Rectangle;
-import javafx.scene.control.Label;
-
+import java.util.Collection;
+import java.util.Collections;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicBoolean;
 
-public class Ferry extends Pane implements Runnable {
+// Simulation model of a ferry, FerryView renders it. Position is in pixels of the view.
+public class Ferry implements Runnable {
     private double speed;
     private int capacity;
     private Dock currentDock;
     private Dock targetDock;
     private int maxLoadingTime;
-    private FerryState state;
+    private volatile FerryState state;
     private double tileSize;
     private ConcurrentLinkedQueue<Vehicle> vehiclesOnBoard;
     private Semaphore vehicleSemaphore;
-    private Rectangle ferryRectangle;
-    private Label vehicleCountLabel;
-    private Label capacityLabel;
-    private Label loadingTimeLabel;
     private int dockHeight;
-    private long lastUpdateTime;
+    private volatile double x;
+    private volatile double y;
+    // The leg published to the renderer, see FerryUpdate
+    private double legFromX;
+    private double legFromY;
+    private long legFromTime;
+    private double legToX;
+    private double legToY;
+    private long legToTime;
     private boolean atOtherQueueDockNotChangedYet;
+    private boolean loadingStarted;
+    private volatile long loadingElapsed; // time spent in the current loading period
+    private long loadingStartTime;
+    private final ExecutionMode executionMode;
+    private final SimulationContext context;
+    private final int updateSlot;
+    private FerryUpdate lastUpdate;
+    private long stepBudget;
+    private boolean parkedAtDock;
 
     private AtomicBoolean running;
 
     private MovementState movementState;
 
     private static final double QUEUE_SPACING = 1.5;
+    static final long STEP_INTERVAL = 100;
+    static final long IDLE = -1; // returned by step while the ferry is parked on a dock queue
 
-    public Ferry(double speed, int capacity, Dock currentDock, Dock targetDock, int maxLoadingTime, double tileSize, int dockHeight){
+    public Ferry(double speed, int capacity, Dock currentDock, Dock targetDock, int maxLoadingTime, double tileSize, int dockHeight,
+                 ExecutionMode executionMode, SimulationContext context){
         this.speed = speed;
         this.capacity = capacity;
         this.currentDock = currentDock;
@@ -48,51 +61,29 @@ public class Ferry extends Pane implements Runnable {
         this.dockHeight = dockHeight;
         this.running = new AtomicBoolean(true);
         this.atOtherQueueDockNotChangedYet = false;
-        initializeFerry();
-    }
-
-    private void initializeFerry() {
-        double ferryWidth = tileSize * dockHeight;
-        double ferryHeight = tileSize * dockHeight;
-
-        ferryRectangle = new Rectangle(ferryWidth, ferryHeight, Color.DARKGRAY);
-        vehicleCountLabel = new Label("0");
-        vehicleCountLabel.setTextFill(Color.WHITE);
-
-        capacityLabel = new Label(String.valueOf(capacity));
-        capacityLabel.setTextFill(Color.RED);
-
-        loadingTimeLabel = new Label("0");
-        loadingTimeLabel.setTextFill(Color.WHITE);
-
-        getChildren().addAll(ferryRectangle, vehicleCountLabel, capacityLabel, loadingTimeLabel);
-
-        setLayoutX(currentDock.getFerryCoordinateX() * tileSize);
-        setLayoutY(currentDock.getFerryCoordinateY() * tileSize);
-
-        positionLabels();
-    }
-
-    private void positionLabels() {
-        capacityLabel.setLayoutX(5);
-        capacityLabel.setLayoutY(5);
-
-        vehicleCountLabel.setLayoutX(ferryRectangle.getWidth() / 2 - 10);
-        vehicleCountLabel.setLayoutY(ferryRectangle.getHeight() / 2 - 10);
-
-        loadingTimeLabel.setLayoutX(ferryRectangle.getWidth() / 2 - 10);
-        loadingTimeLabel.setLayoutY(ferryRectangle.getHeight() - 20);
+        this.loadingStarted = false;
+        this.loadingElapsed = 0;
+        this.executionMode = executionMode;
+        this.context = context;
+        this.stepBudget = 0;
+        this.parkedAtDock = false;
+        this.updateSlot = context.getFerryUpdates().register();
+        setPosition(currentDock.getFerryCoordinateX() * tileSize, currentDock.getFerryCoordinateY() * tileSize);
     }
 
     public void stop() {
         running.set(false);
     }
 
+    public boolean isRunning() {
+        return running.get();
+    }
+
     @Override
     public void run() {
         while (running.get()) {
             try {
-                Thread.sleep(100);
+                context.getClock().sleep(STEP_INTERVAL);
                 updateFerryState();
             } catch (InterruptedException e) {
                 e.printStackTrace();
@@ -100,6 +91,60 @@ public class Ferry extends Pane implements Runnable {
         }
     }
 
+    // Runs as many ferry steps as fit into the time handed over by the engine
+    public void tick(long elapsedMillis) {
+        stepBudget += elapsedMillis;
+        while (running.get() && stepBudget >= STEP_INTERVAL) {
+            stepBudget -= STEP_INTERVAL;
+            updateFerryState();
+        }
+    }
+
+    /*
+       One event of the discrete-event engine. Runs the ferry's next transition and returns the time until the one
+       after it, or IDLE while the ferry is parked on a dock queue. A loading period runs until it ends or the ferry
+       is full, with a boarding in between for every vehicle that enters the critical section. A travelling ferry
+       runs once at the end of each leg and is where the leg puts it at that time, so the target dock is only
+       checked at the ends of legs. Transitions that take no time return 0.
+    */
+    public long step() {
+        long now = context.getClock().currentTimeMillis();
+        if (loadingStarted) {
+            loadingElapsed = now - loadingStartTime;
+        }
+        if (state == FerryState.TRAVELING) {
+            followLeg(now);
+        }
+
+        FerryState previousState = state;
+        MovementState previousMovementState = movementState;
+        updateFerryState();
+        if (state != previousState || movementState != previousMovementState) {
+            return 0;
+        }
+
+        switch (state) {
+            case LOADING:
+                if (!loadingStarted || vehicleSemaphore.availablePermits() == 0) {
+                    return 0;
+                }
+                return maxLoadingTime - loadingElapsed;
+            case TRAVELING:
+                return Math.max(0, legToTime - now);
+            case QUEUEING:
+                return parkedAtDock ? IDLE : 0;
+            default:
+                return 0;
+        }
+    }
+
+    // Puts the ferry where its leg has got to by the given time
+    private void followLeg(long now) {
+        double progress = now >= legToTime ? 1 : Math.max(0, (double) (now - legFromTime) / (legToTime - legFromTime));
+        x = legFromX + (legToX - legFromX) * progress;
+        y = legFromY + (legToY - legFromY) * progress;
+    }
+
     private void updateFerryState() {
         switch (state) {
             case LOADING:
@@ -115,23 +160,40 @@ public class Ferry extends Pane implements Runnable {
                 waitForDock();
                 break;
         }
+        publishUpdate();
+    }
+
+    /*
+       Hands the current state to the renderer, steps along the same leg that change nothing else publish nothing.
+       Besides the ferry's own stepping thread, the thread of another ferry entering or leaving a dock queue moves
+       this one through Dock.updateQueuePositions and setQueuePosition. The monitor keeps a leg from being read
+       half written, it is only contended at those queue changes.
+    */
+    private synchronized void publishUpdate() {
+        FerryUpdate update = new FerryUpdate(legFromX, legFromY, legFromTime, legToX, legToY, legToTime,
+                vehiclesOnBoard.size(), isLoading(), getRemainingLoadingTime());
+        if (!update.equals(lastUpdate)) {
+            lastUpdate = update;
+            context.getFerryUpdates().publish(updateSlot, update);
+        }
     }
 
+    /*
+       One step of the loading period, the period ends once the ferry is full or the loading time runs out.
+       Loading time is counted in ferry steps rather than read from the wall clock, so it means the same
+       in every execution mode.
+    */
     private void loadVehicles() {
-        currentDock.setFerryAtDock(true);
-        long startTime = System.currentTimeMillis();
-        Platform.runLater(() -> loadingTimeLabel.setVisible(true));
-        while ((System.currentTimeMillis() - startTime < maxLoadingTime) && running.get()) {
-            if (vehicleSemaphore.availablePermits() == 0) {
-                System.out.println("Prom pełny");
-                break;
-            }
+        if (!loadingStarted) {
+            currentDock.setFerryAtDock(true);
+            loadingStarted = true;
+            loadingElapsed = 0;
+            loadingStartTime = context.getClock().currentTimeMillis();
+        }
 
-            long currentTime = System.currentTimeMillis();
-            if (currentTime - lastUpdateTime >= 1000) {
-                long remainingTime = maxLoadingTime - (currentTime - startTime);
-                updateLoadingTimeLabel(remainingTime);
-                lastUpdateTime = currentTime;
+        if (loadingElapsed < maxLoadingTime && vehicleSemaphore.availablePermits() > 0) {
+            if (executionMode != ExecutionMode.DISCRETE_EVENT) {
+                loadingElapsed += STEP_INTERVAL; // event-driven ferries measure it from the start, see step
             }
 
             currentDock.signalVehicleToEnterCriticalSection(); // Signal to the next vehicle in the entering queue
@@ -144,42 +206,53 @@ public class Ferry extends Pane implements Runnable {
                         vehiclesOnBoard.add(vehicle);
                         currentDock.setCriticalSectionVehicle(null);
                         vehicle.revertChangesToCriticalSectionWhenBoarding();
-                        updateVehicleCount();
+                        context.getStatistics().vehicleBoarded(vehicle);
                     } catch (InterruptedException e) {
                         Thread.currentThread().interrupt();
-                        return;
                     }
                 }
             } finally {
                 currentDock.getCriticalSectionLock().unlock();
             }
+            return;
+        }
 
-            try {
-                Thread.sleep(100);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                return;
-            }
+        if (vehicleSemaphore.availablePermits() == 0) {
+            context.log("Prom pełny");
         }
+        loadingStarted = false;
 
-        if (vehiclesOnBoard.isEmpty()) {
+        if (vehiclesOnBoard.isEmpty() && !isDockWanted()) {
             state = FerryState.LOADING; // Restart loading period if no vehicles on board
         } else {
             currentDock.setFerryAtDock(false);
-            Platform.runLater(() -> loadingTimeLabel.setVisible(false));
+            context.getStatistics().ferryDeparted(vehiclesOnBoard.size());
             state = FerryState.TRAVELING;
         }
     }
 
+    /*
+       The dock's critical section vehicle is not touched here. When a loading period ends while a vehicle waits
+       in the critical section, that vehicle boards the next ferry at the dock. Pointing the field at an unloading
+       vehicle instead lost the waiting one: it was never boarded and kept its cell, so the unloading vehicles
+       could never claim that cell and the dock deadlocked.
+    */
+    /*
+       An empty ferry gives the dock up when nobody waits to board and another ferry waits for the dock. Otherwise
+       the ferries queued here can be the ones carrying every vehicle allowed by maxVehicles, no new vehicle comes
+       to board the empty ferry and the whole simulation stalls.
+    */
+    private boolean isDockWanted() {
+        return !currentDock.hasQueuedEnteringVehicles() && currentDock.peekNextFerryInQueue() != null;
+    }
+
     private void unloadVehicles() {
         while (!vehiclesOnBoard.isEmpty()) {
             Vehicle vehicle = vehiclesOnBoard.poll();
             if (vehicle != null) {
                 currentDock.getCriticalSectionLock().lock();
                 try {
-                    currentDock.setCriticalSectionVehicle(vehicle);
                     vehicle.setTravelState(VehicleState.UNLOADING_FROM_FERRY);
-                    updateVehicleCount();
                     vehicleSemaphore.release();
                 } finally {
                     currentDock.getCriticalSectionLock().unlock();
@@ -202,8 +275,7 @@ public class Ferry extends Pane implements Runnable {
                 if (hasReachedTarget(targetX, targetY)) {
                     currentDock.signalNextFerry();
                     movementState = MovementState.GO_TO_LANE_END;
-                    safeSetLayoutX(targetX);
-                    safeSetLayoutY(targetY);
+                    setPosition(targetX, targetY);
                 }
                 break;
 
@@ -218,8 +290,7 @@ public class Ferry extends Pane implements Runnable {
 
                 if (hasReachedTarget(targetX, targetY)) {
                     movementState = MovementState.GO_TO_DOCK;
-                    safeSetLayoutX(targetX);
-                    safeSetLayoutY(targetY);
+                    setPosition(targetX, targetY);
                 }
                 break;
 
@@ -235,22 +306,22 @@ public class Ferry extends Pane implements Runnable {
                     currentDock = targetDock;
                     targetDock = temp;
                     atOtherQueueDockNotChangedYet = false;
-                    safeSetLayoutX(targetX);
-                    safeSetLayoutY(targetY);
+                    context.getStatistics().ferryArrived();
+                    setPosition(targetX, targetY);
                 }
                 break;
 
             case PREPARING_TO_ENTER_QUEUE:
                 targetX = currentDock.getGoDownToNextDockQueueX() * tileSize;
-                moveTo(targetX, getLayoutY());
+                moveTo(targetX, y);
 
                 if (!targetDock.isFerryAtDock() && targetDock.peekNextFerryInQueue() == null) {
                     movementState = MovementState.GO_TO_LANE_END;
                 }
 
-                if (hasReachedTarget(targetX, getLayoutY())) {
+                if (hasReachedTarget(targetX, y)) {
                     movementState = MovementState.GO_DOWN_IN_QUEUE;
-                    safeSetLayoutX(targetX);
+                    setPosition(targetX, y);
                 }
 
                 break;
@@ -258,9 +329,9 @@ public class Ferry extends Pane implements Runnable {
             case GO_DOWN_IN_QUEUE:
                 targetY = targetDock.getFerryQueueCoordinateY() * tileSize +
                         targetDock.getFerryQueueSize() * dockHeight * QUEUE_SPACING * tileSize;
-                moveTo(getLayoutX(), targetY);
+                moveTo(x, targetY);
 
-                if (hasReachedTarget(getLayoutX(), targetY)) {
+                if (hasReachedTarget(x, targetY)) {
                     this.atOtherQueueDockNotChangedYet = true;
                     movementState = MovementState.ENTERING_QUEUE;
                 }
@@ -283,32 +354,107 @@ public class Ferry extends Pane implements Runnable {
     }
 
     private void moveTo(double targetX, double targetY) {
-        double deltaX = targetX - getLayoutX();
-        double deltaY = targetY - getLayoutY();
+        double deltaX = targetX - x;
+        double deltaY = targetY - y;
         double distance = Math.sqrt(deltaX * deltaX + deltaY * deltaY);
-        if (distance > speed) {
-            double stepX = speed * (deltaX / distance);
-            double stepY = speed * (deltaY / distance);
+        if (targetX != legToX || targetY != legToY) {
+            // A new leg starts here, at speed pixels per step it takes distance / speed steps
+            long now = context.getClock().currentTimeMillis();
+            setLeg(x, y, now, targetX, targetY, now + (long) (distance / speed * STEP_INTERVAL));
+        }
 
-            safeSetLayoutX(getLayoutX() + stepX);
-            safeSetLayoutY(getLayoutY() + stepY);
+        if (executionMode == ExecutionMode.DISCRETE_EVENT) {
+            return; // the engine runs the ferry again at the end of the leg, see step
+        }
+
+        // The steps follow the published leg, so they aren't published one by one
+        if (distance > speed) {
+            x += speed * (deltaX / distance);
+            y += speed * (deltaY / distance);
         } else {
-            safeSetLayoutX(targetX);
-            safeSetLayoutY(targetY);
+            x = targetX;
+            y = targetY;
         }
     }
 
+    // Synchronized with publishUpdate, see there for the second thread
+    private synchronized void setLeg(double fromX, double fromY, long fromTime, double toX, double toY, long toTime) {
+        legFromX = fromX;
+        legFromY = fromY;
+        legFromTime = fromTime;
+        legToX = toX;
+        legToY = toY;
+        legToTime = toTime;
+    }
+
     private boolean hasReachedTarget(double targetX, double targetY) {
-        boolean reached = Math.abs(getLayoutX() - targetX) < 1 && Math.abs(getLayoutY() - targetY) < 1;
+        boolean reached = Math.abs(x - targetX) < 1 && Math.abs(y - targetY) < 1;
         return reached;
     }
 
-    private void safeSetLayoutX(double x) {
-        Platform.runLater(() -> setLayoutX(x));
+    // Puts the ferry in place, it stands there until the next leg. Queue positions are also set by the dock
+    // on behalf of other ferries, so the change is published right away
+    private void setPosition(double x, double y) {
+        this.x = x;
+        this.y = y;
+        long now = context.getClock().currentTimeMillis();
+        setLeg(x, y, now, x, y, now);
+        publishUpdate();
+    }
+
+    public double getX() {
+        return x;
+    }
+
+    public double getY() {
+        return y;
+    }
+
+    public double getSize() {
+        return tileSize * dockHeight;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getUpdateSlot() {
+        return updateSlot;
+    }
+
+    public int getVehicleCount() {
+        return vehiclesOnBoard.size();
+    }
+
+    public boolean isLoading() {
+        return state == FerryState.LOADING;
+    }
+
+    // True while a loading period is running at the dock, vehicles entering its critical section board this ferry
+    public boolean isLoadingAt(Dock dock) {
+        return state == FerryState.LOADING && loadingStarted && currentDock == dock;
+    }
+
+    // On the last leg to a dock or unloading there
+    public boolean isArriving() {
+        return state == FerryState.UNLOADING || state == FerryState.TRAVELING
+                && (movementState == MovementState.GO_TO_DOCK || movementState == MovementState.LEAVING_QUEUE);
+    }
+
+    public boolean isUnloading() {
+        return state == FerryState.UNLOADING;
     }
 
-    private void safeSetLayoutY(double y) {
-        Platform.runLater(() -> setLayoutY(y));
+    public boolean isQueueing() {
+        return state == FerryState.QUEUEING;
+    }
+
+    public Collection<Vehicle> getVehiclesOnBoard() {
+        return Collections.unmodifiableCollection(vehiclesOnBoard);
+    }
+
+    public long getRemainingLoadingTime() {
+        return Math.max(0, maxLoadingTime - loadingElapsed);
     }
 
     public boolean setQueuePosition(int positionInQueue) {
@@ -335,54 +481,49 @@ public class Ferry extends Pane implements Runnable {
             }
         }
 
-        safeSetLayoutX(posX);
-        safeSetLayoutY(posY);
+        setPosition(posX, posY);
         return true;
     }
 
 
-    private void updateVehicleCount() {
-        Platform.runLater(() -> vehicleCountLabel.setText(String.valueOf(vehiclesOnBoard.size())));
-    }
-
-    private void updateLoadingTimeLabel(long remainingTime) {
-        Platform.runLater(() -> loadingTimeLabel.setText(String.valueOf(remainingTime / 1000) + " s"));
-    }
-
-
     private void waitForDock() {
-        if (atOtherQueueDockNotChangedYet) {
-            targetDock.getDockLock().lock();
-            try {
-                if (targetDock.isFerryAtDock() || targetDock.peekNextFerryInQueue() != this) {
-                    System.out.println(targetDock.peekNextFerryInQueue() + " is waiting for the dock");
-                    targetDock.getDockAvailableCondition().await();
-                }
-                movementState = MovementState.LEAVING_QUEUE;
-                state = FerryState.TRAVELING;
+        Dock dock = atOtherQueueDockNotChangedYet ? targetDock : currentDock;
+        if (!executionMode.usesEntityThreads()) {
+            waitForDockWithoutBlocking(dock);
+            return;
+        }
 
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-            } finally {
-                targetDock.getDockLock().unlock();
+        dock.getDockLock().lock();
+        try {
+            if (dock.isFerryAtDock() || dock.peekNextFerryInQueue() != this) {
+                context.log(dock.peekNextFerryInQueue() + " is waiting for the dock");
+                dock.getDockAvailableCondition().await();
             }
+            movementState = MovementState.LEAVING_QUEUE;
+            state = FerryState.TRAVELING;
 
-        } else {
-            currentDock.getDockLock().lock();
-            try {
-                if (currentDock.isFerryAtDock() || currentDock.peekNextFerryInQueue() != this) {
-                    System.out.println(currentDock.peekNextFerryInQueue() + " is waiting for the dock");
-                    currentDock.getDockAvailableCondition().await();
-                }
-                movementState = MovementState.LEAVING_QUEUE;
-                state = FerryState.TRAVELING;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            dock.getDockLock().unlock();
+        }
+    }
 
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-            } finally {
-                currentDock.getDockLock().unlock();
+    // Same rules as waitForDock, but the ferry parks on the dock and polls it on every step instead of awaiting
+    private void waitForDockWithoutBlocking(Dock dock) {
+        if (parkedAtDock) {
+            if (!dock.tryUnparkFerry()) {
+                return;
             }
+            parkedAtDock = false;
+        } else if (dock.isFerryAtDock() || dock.peekNextFerryInQueue() != this) {
+            context.log(dock.peekNextFerryInQueue() + " is waiting for the dock");
+            dock.parkFerry();
+            parkedAtDock = true;
+            return;
         }
+        movementState = MovementState.LEAVING_QUEUE;
+        state = FerryState.TRAVELING;
     }
 
     private void leaveQueue() {
@@ -395,10 +536,11 @@ public class Ferry extends Pane implements Runnable {
 
             if (hasReachedTarget(targetX, targetY)) {
                 targetDock.pollFerryFromQueue();
-                System.out.println("Ferry " + this + " has left the queue.");
+                context.log("Ferry " + this + " has left the queue.");
                 movementState = MovementState.AT_DOCK;
                 state = FerryState.UNLOADING;
                 targetDock.setFerryAtDock(true);
+                context.getStatistics().ferryArrived();
                 Dock temp = currentDock;
                 currentDock = targetDock;
                 targetDock = temp;
@@ -412,7 +554,7 @@ public class Ferry extends Pane implements Runnable {
 
             if (hasReachedTarget(targetX, targetY)) {
                 currentDock.pollFerryFromQueue();
-                System.out.println("Ferry " + this + " has reached the dock.");
+                context.log("Ferry " + this + " has reached the dock.");
                 movementState = MovementState.AT_DOCK;
                 state = FerryState.UNLOADING;
                 currentDock.setFerryAtDock(true);
@@ -421,7 +563,7 @@ public class Ferry extends Pane implements Runnable {
     }
 
     private void enterQueue() {
-        System.out.println("Ferry " + this + " is entering the queue.");
+        context.log("Ferry " + this + " is entering the queue.");
         targetDock.addFerryToQueue(this);
         movementState = MovementState.IN_QUEUE;
         state = FerryState.QUEUEING;
@@ -0,0 +1,32 @@
+package com.github.nxmbit.ferriessimulator;
+
+/*
+   Everything the renderer shows of a ferry, taken at one point of its run.
+   Instead of its position the ferry publishes the leg it is moving along:
+   from (fromX, fromY) at fromTime to (toX, toY) at toTime, in simulated
+   milliseconds. The renderer interpolates along it at its own frame rate,
+   so it doesn't depend on how often the ferry steps or publishes. A ferry
+   that stands still has a leg of zero length.
+*/
+public record FerryUpdate(double fromX, double fromY, long fromTime, double toX, double toY, long toTime,
+                          int vehicleCount, boolean loading, long remainingLoadingTime) {
+
+    // Position along the leg at the given simulated time, the ends are held before and after the leg
+    public double xAt(long time) {
+        return fromX + (toX - fromX) * progress(time);
+    }
+
+    public double yAt(long time) {
+        return fromY + (toY - fromY) * progress(time);
+    }
+
+    private double progress(long time) {
+        if (time >= toTime) {
+            return 1;
+        }
+        if (time <= fromTime) {
+            return 0;
+        }
+        return (double) (time - fromTime) / (toTime - fromTime);
+    }
+}
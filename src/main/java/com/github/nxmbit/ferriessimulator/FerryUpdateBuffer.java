@@ -0,0 +1,49 @@
+package com.github.nxmbit.ferriessimulator;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.ObjIntConsumer;
+
+/*
+   Coalesces ferry state changes between two frames. Every ferry owns a slot
+   and writes its latest FerryUpdate into it as often as it likes, a newer
+   update simply replaces an unapplied older one. The renderer drains the
+   buffer once per frame, so it applies at most one update per ferry per
+   frame no matter how many steps the ferries made.
+*/
+public class FerryUpdateBuffer {
+    private final AtomicReferenceArray<FerryUpdate> pending;
+    private final AtomicInteger slotCount;
+
+    public FerryUpdateBuffer(int capacity) {
+        this.pending = new AtomicReferenceArray<>(capacity);
+        this.slotCount = new AtomicInteger();
+    }
+
+    // Returns the slot a new ferry publishes into
+    public int register() {
+        int slot = slotCount.getAndIncrement();
+        if (slot >= pending.length()) {
+            throw new IllegalStateException("Ferry update buffer is full, capacity: " + pending.length());
+        }
+        return slot;
+    }
+
+    public void publish(int slot, FerryUpdate update) {
+        pending.set(slot, update);
+    }
+
+    // Hands the latest unapplied update of every ferry that changed since the last drain to the consumer
+    public void drain(ObjIntConsumer<FerryUpdate> consumer) {
+        int slots = slotCount.get();
+        for (int slot = 0; slot < slots; slot++) {
+            if (pending.get(slot) == null) {
+                continue;
+            }
+            FerryUpdate update = pending.getAndSet(slot, null);
+            if (update != null) {
+                consumer.accept(update, slot);
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.github.nxmbit.ferriessimulator;
+
+import javafx.scene.control.Label;
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.Rectangle;
+
+// Renders a Ferry, must only be used on the FX thread
+public class FerryView extends Pane {
+    private final Ferry ferry;
+    private Rectangle ferryRectangle;
+    private Label vehicleCountLabel;
+    private Label capacityLabel;
+    private Label loadingTimeLabel;
+    private FerryUpdate shownUpdate;
+
+    public FerryView(Ferry ferry) {
+        this.ferry = ferry;
+        initializeFerry();
+    }
+
+    private void initializeFerry() {
+        double ferrySize = ferry.getSize();
+
+        ferryRectangle = new Rectangle(ferrySize, ferrySize, Color.DARKGRAY);
+        vehicleCountLabel = new Label("0");
+        vehicleCountLabel.setTextFill(Color.WHITE);
+
+        capacityLabel = new Label(String.valueOf(ferry.getCapacity()));
+        capacityLabel.setTextFill(Color.RED);
+
+        loadingTimeLabel = new Label("0");
+        loadingTimeLabel.setTextFill(Color.WHITE);
+
+        getChildren().addAll(ferryRectangle, vehicleCountLabel, capacityLabel, loadingTimeLabel);
+
+        positionLabels();
+    }
+
+    private void positionLabels() {
+        capacityLabel.setLayoutX(5);
+        capacityLabel.setLayoutY(5);
+
+        vehicleCountLabel.setLayoutX(ferryRectangle.getWidth() / 2 - 10);
+        vehicleCountLabel.setLayoutY(ferryRectangle.getHeight() / 2 - 10);
+
+        loadingTimeLabel.setLayoutX(ferryRectangle.getWidth() / 2 - 10);
+        loadingTimeLabel.setLayoutY(ferryRectangle.getHeight() - 20);
+    }
+
+    // Moves the ferry to where it is along its leg at the given simulated time, the labels only change with a new update
+    public void update(FerryUpdate update, long time) {
+        setLayoutX(update.xAt(time));
+        setLayoutY(update.yAt(time));
+        if (update == shownUpdate) {
+            return;
+        }
+        shownUpdate = update;
+        vehicleCountLabel.setText(String.valueOf(update.vehicleCount()));
+        loadingTimeLabel.setVisible(update.loading());
+        loadingTimeLabel.setText(update.remainingLoadingTime() / 1000 + " s");
+    }
+
+    public Ferry getFerry() {
+        return ferry;
+    }
+}
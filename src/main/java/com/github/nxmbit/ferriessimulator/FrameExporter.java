@@ -0,0 +1,206 @@
+package com.github.nxmbit.ferriessimulator;
+
+import javafx.scene.paint.Color;
+import javafx.scene.paint.Paint;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+   Writes the state of a simulation without a window to PNG frames, one
+   every interval of simulated time. It reads the published WorldSnapshots,
+   so it takes the place of the renderer and must not be used alongside one.
+   Frames are taken from the capture itself on the thread driving the
+   simulation, so the renderer stays the only reader of the snapshot
+   buffer. That thread only copies the capture, drawing and encoding run on
+   a small pool of ENCODER_THREADS. The pool's queue holds QUEUE_CAPACITY
+   frames. With a real-time clock, frames that come while it is full are
+   dropped and counted, so the simulation never waits for the encoders. A
+   manual clock has no pace to keep, so the discrete-event engine waits for
+   room instead and every frame is written.
+
+   Frames are drawn straight into a pixel array: every cell in the flat color
+   of its tile (image tiles in FALLBACK_COLOR) or of its vehicle, the ferries,
+   and a bar next to each dock showing how full its entering queue is.
+*/
+public class FrameExporter implements AutoCloseable {
+    private static final int ENCODER_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    private static final int QUEUE_CAPACITY = 8;
+    private static final Color FALLBACK_COLOR = Color.DARKGRAY;
+    private static final int QUEUE_BAR_WIDTH = 8;
+    private static final int QUEUE_BAR_HEIGHT = 32;
+
+    private final SimulationContext context;
+    private final SimulationGrid grid;
+    private final Map<Integer, Dock> docks;
+    private final Path directory;
+    private final long interval;
+    private final int cellSize;
+    private final double scale; // from ferry pixels at the simulation's tile size to frame pixels
+    private final double[] ferrySizes; // by update slot
+    private final int[] background; // the map without vehicles and ferries, drawn once
+    private final int width;
+    private final int height;
+    private final ThreadPoolExecutor encoders;
+    private final AtomicInteger exportedFrames;
+    private final AtomicInteger droppedFrames;
+    private final boolean blocking; // wait for room in the queue instead of dropping frames
+    private long nextFrameTime; // only used by the thread driving the simulation
+
+    public FrameExporter(SimulationContext context, List<Ferry> ferries, Path directory, long interval, int cellSize,
+                         double tileSize, int maxFerries) throws IOException {
+        this.context = context;
+        this.grid = context.getGrid();
+        this.docks = context.getDocks();
+        this.directory = Files.createDirectories(directory);
+        this.interval = interval;
+        this.cellSize = cellSize;
+        this.scale = cellSize / tileSize;
+        this.ferrySizes = new double[maxFerries];
+        synchronized (ferries) {
+            for (Ferry ferry : ferries) {
+                ferrySizes[ferry.getUpdateSlot()] = ferry.getSize() * scale;
+            }
+        }
+        this.width = grid.getWidth() * cellSize;
+        this.height = grid.getHeight() * cellSize;
+        this.background = new int[width * height];
+        for (int x = 0; x < grid.getWidth(); x++) {
+            for (int y = 0; y < grid.getHeight(); y++) {
+                fillCell(background, x, y, toArgb(grid.getOriginalType(x, y)));
+            }
+        }
+
+        this.exportedFrames = new AtomicInteger();
+        this.droppedFrames = new AtomicInteger();
+        this.blocking = context.getClock().isManual();
+        this.encoders = new ThreadPoolExecutor(ENCODER_THREADS, ENCODER_THREADS, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(QUEUE_CAPACITY),
+                Thread.ofPlatform().name("frame-encoder-", 0).daemon().factory(),
+                this::queueFull);
+    }
+
+    public long getInterval() {
+        return interval;
+    }
+
+    // Called by the thread driving the simulation right after each capture, exports it if a frame is due
+    public void captured(WorldSnapshotBuffer snapshots) {
+        long time = snapshots.getCaptureTime();
+        if (time < nextFrameTime) {
+            return;
+        }
+        nextFrameTime = time - time % interval + interval;
+
+        // Checked up front so a frame that would be dropped isn't copied first
+        if (!blocking && encoders.getQueue().remainingCapacity() == 0) {
+            droppedFrames.incrementAndGet();
+            return;
+        }
+        WorldSnapshot copy = new WorldSnapshot(grid.getWidth(), grid.getHeight(), ferrySizes.length);
+        snapshots.copyCaptureInto(copy);
+        encoders.execute(() -> writeFrame(copy));
+    }
+
+    private void queueFull(Runnable frame, ThreadPoolExecutor executor) {
+        if (!blocking) {
+            droppedFrames.incrementAndGet();
+            return;
+        }
+        try {
+            executor.getQueue().put(frame);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            droppedFrames.incrementAndGet();
+        }
+    }
+
+    private void writeFrame(WorldSnapshot snapshot) {
+        int[] pixels = background.clone();
+        for (int index = 0; index < grid.getWidth() * grid.getHeight(); index++) {
+            byte vehicleColor = snapshot.getVehicleColor(index);
+            if (vehicleColor != WorldSnapshot.NO_VEHICLE) {
+                fillCell(pixels, index % grid.getWidth(), index / grid.getWidth(), toArgb(Tile.VEHICLE_COLORS[vehicleColor]));
+            }
+        }
+
+        long time = snapshot.getSimulatedTime();
+        for (int slot = 0; slot < ferrySizes.length; slot++) {
+            FerryUpdate ferry = snapshot.getFerry(slot);
+            if (ferry != null) {
+                int size = (int) Math.round(ferrySizes[slot]);
+                fillRect(pixels, (int) Math.round(ferry.xAt(time) * scale), (int) Math.round(ferry.yAt(time) * scale),
+                        size, size, toArgb(FALLBACK_COLOR));
+            }
+        }
+
+        for (Map.Entry<Integer, Dock> entry : docks.entrySet()) {
+            Dock dock = entry.getValue();
+            double fill = snapshot.getDockQueueFill(entry.getKey());
+            int x = (dock.getCriticalSectionCoordinateX() + 1) * cellSize;
+            int y = dock.getCriticalSectionCoordinateY() * cellSize - QUEUE_BAR_HEIGHT;
+            int filledHeight = (int) Math.round((QUEUE_BAR_HEIGHT - 2) * fill);
+            fillRect(pixels, x, y, QUEUE_BAR_WIDTH, QUEUE_BAR_HEIGHT, toArgb(Color.BLACK));
+            fillRect(pixels, x + 1, y + QUEUE_BAR_HEIGHT - 1 - filledHeight, QUEUE_BAR_WIDTH - 2, filledHeight,
+                    toArgb(fill < 1 ? Color.ORANGE : Color.RED));
+        }
+
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        image.setRGB(0, 0, width, height, pixels, 0, width);
+        // Named by the simulated millisecond, frames are never less than one apart so none overwrites another
+        Path file = directory.resolve(String.format("frame-%010d.png", time));
+        try {
+            ImageIO.write(image, "png", file.toFile());
+            exportedFrames.incrementAndGet();
+        } catch (IOException e) {
+            System.err.println("Couldn't write " + file + ": " + e.getMessage());
+        }
+    }
+
+    private void fillCell(int[] pixels, int x, int y, int argb) {
+        fillRect(pixels, x * cellSize, y * cellSize, cellSize, cellSize, argb);
+    }
+
+    // Clipped to the frame, ferries and queue bars can reach over its edges
+    private void fillRect(int[] pixels, int x, int y, int rectWidth, int rectHeight, int argb) {
+        int minX = Math.max(0, x);
+        int maxX = Math.min(width, x + rectWidth);
+        for (int row = Math.max(0, y); row < Math.min(height, y + rectHeight); row++) {
+            if (minX < maxX) {
+                Arrays.fill(pixels, row * width + minX, row * width + maxX, argb);
+            }
+        }
+    }
+
+    private static int toArgb(TileType type) {
+        Paint paint = Tile.getPaint(type);
+        return toArgb(paint instanceof Color color ? color : FALLBACK_COLOR);
+    }
+
+    private static int toArgb(Color color) {
+        return (int) Math.round(color.getOpacity() * 255) << 24 | (int) Math.round(color.getRed() * 255) << 16
+                | (int) Math.round(color.getGreen() * 255) << 8 | (int) Math.round(color.getBlue() * 255);
+    }
+
+    // Waits for the queued frames to be written
+    @Override
+    public void close() {
+        encoders.shutdown();
+        try {
+            encoders.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        context.log("Exported " + exportedFrames.get() + " frames to " + directory + ", dropped " + droppedFrames.get());
+    }
+}
@@ -0,0 +1,54 @@
+package com.github.nxmbit.ferriessimulator;
+
+/*
+   Measures how long the FX thread spends on a frame: updating the scene
+   (the draw call) and the layout and CSS pass of the following pulse. The
+   averages are logged every REPORT_INTERVAL frames, so renderers can be
+   compared on the same map. Only created when the frameTimeReport setting
+   is on.
+*/
+public class FrameTimeMonitor {
+    private static final int REPORT_INTERVAL = 100;
+
+    private final String name;
+    private long frames;
+    private long totalUpdateTime;
+    private long maxUpdateTime;
+    private long layoutPasses;
+    private long totalLayoutTime;
+    private long layoutStartTime;
+
+    public FrameTimeMonitor(String name) {
+        this.name = name;
+    }
+
+    public void updateFinished(long updateTime) {
+        frames++;
+        totalUpdateTime += updateTime;
+        maxUpdateTime = Math.max(maxUpdateTime, updateTime);
+        if (frames == REPORT_INTERVAL) {
+            report();
+        }
+    }
+
+    // Registered as the scene's pre and post layout pulse listeners
+    public void layoutStarted() {
+        layoutStartTime = System.nanoTime();
+    }
+
+    public void layoutFinished() {
+        layoutPasses++;
+        totalLayoutTime += System.nanoTime() - layoutStartTime;
+    }
+
+    private void report() {
+        System.out.println(String.format("%s renderer: update %.2f ms (max %.2f ms), layout %.2f ms per frame over %d frames",
+                name, totalUpdateTime / 1e6 / frames, maxUpdateTime / 1e6,
+                layoutPasses == 0 ? 0 : totalLayoutTime / 1e6 / layoutPasses, frames));
+        frames = 0;
+        totalUpdateTime = 0;
+        maxUpdateTime = 0;
+        layoutPasses = 0;
+        totalLayoutTime = 0;
+    }
+}
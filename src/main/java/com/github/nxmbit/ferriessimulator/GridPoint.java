@@ -0,0 +1,5 @@
+package com.github.nxmbit.ferriessimulator;
+
+// Coordinates of a single grid cell
+public record GridPoint(int x, int y) {
+}
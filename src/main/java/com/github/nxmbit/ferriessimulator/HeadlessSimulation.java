@@ -0,0 +1,80 @@
+package com.github.nxmbit.ferriessimulator;
+
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+
+/*
+   Runs a whole simulated schedule without a window, using the discrete-event
+   engine, and prints the statistics at the end. Defaults come from
+   settings.json and map_properties.json, the same values the window starts with.
+   With a frameExportInterval set, the run is also written to PNG frames.
+   Usage: HeadlessSimulation [simulated hours] [settings overrides as JSON]
+*/
+public class HeadlessSimulation {
+    // The map pane's size in simulation.fxml. Ferry speed is given in pixels per step, so ferries need the tile size
+    // the window would give the map, 13 px for the 128x64 map
+    private static final double WINDOW_PANE_WIDTH = 1664;
+    private static final double WINDOW_PANE_HEIGHT = 936;
+
+    public static void main(String[] args) {
+        JSONObject overrides = args.length > 1 ? new JSONObject(args[1]) : new JSONObject();
+        SettingsImport settings = new SettingsImport(overrides);
+        double simulatedHours = args.length > 0 ? Double.parseDouble(args[0]) : settings.getSimulatedHours();
+
+        long startTime = System.currentTimeMillis();
+        Path frameDirectory = settings.getFrameExportInterval() > 0 ? Path.of(settings.getFrameExportDirectory()) : null;
+        try {
+            runSimulation(settings, simulatedHours, frameDirectory);
+        } catch (IllegalStateException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+        System.out.println("Simulated " + simulatedHours + " h in " + (System.currentTimeMillis() - startTime) + " ms");
+    }
+
+    // Runs one simulation to the end on the calling thread and returns its statistics, a stalled run throws instead
+    public static SimulationStatistics runSimulation(SettingsImport settings, double simulatedHours) {
+        return runSimulation(settings, simulatedHours, null);
+    }
+
+    // Same, writing frames to frameDirectory unless it is null
+    public static SimulationStatistics runSimulation(SettingsImport settings, double simulatedHours, Path frameDirectory) {
+        MapModel map = MapModel.load(settings);
+        double tileSize = Math.min(WINDOW_PANE_WIDTH / map.getGridWidth(), WINDOW_PANE_HEIGHT / map.getGridHeight());
+        Simulation simulation = new Simulation(ExecutionMode.DISCRETE_EVENT, settings);
+        simulation.setup(map.getDockHeight(), tileSize, new SimulationGrid(map),
+                map.getDock(1).enteringCapacity(), map.getDock(1).exitingCapacity(),
+                map.getDock(2).enteringCapacity(), map.getDock(2).exitingCapacity(),
+                settings.getFerrySpeed(), map.getDock(1).ferryQueueSize(), map.getDock(2).ferryQueueSize(),
+                settings.getMinRandomFerryLoadingTime() / 1000, settings.getMaxRandomFerryLoadingTime() / 1000,
+                settings.getMinRandomFerryCapacity(), settings.getMaxRandomFerryCapacity());
+        simulation.setSimulatedDuration((long) (simulatedHours * 3_600_000));
+
+        FrameExporter frameExporter = null;
+        if (frameDirectory != null) {
+            try {
+                frameExporter = new FrameExporter(simulation.getContext(), simulation.getFerries(), frameDirectory,
+                        settings.getFrameExportInterval(), settings.getFrameExportCellSize(), tileSize,
+                        map.getMaxNumberOfFerries());
+            } catch (IOException e) {
+                throw new UncheckedIOException("Couldn't create " + frameDirectory, e);
+            }
+            simulation.setFrameExporter(frameExporter);
+        }
+
+        simulation.run();
+        simulation.stop();
+        if (frameExporter != null) {
+            frameExporter.close();
+        }
+        SimulationStatistics statistics = simulation.getContext().getStatistics();
+        if (statistics.isStalled()) {
+            throw new IllegalStateException("The simulation stalled after "
+                    + String.format("%.2f", statistics.getStallTime() / 3_600_000.0) + " h, no vehicle boarded or arrived after that for an hour");
+        }
+        return statistics;
+    }
+}
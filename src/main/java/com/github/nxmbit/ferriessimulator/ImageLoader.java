@@ -1,100 +1,200 @@
 package com.github.nxmbit.ferriessimulator;
 
+import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
 import javafx.scene.paint.ImagePattern;
-
+import javafx.scene.paint.Paint;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/*
+   Loads the tile images on a background thread and packs them into an
+   atlas, ATLAS_COLUMNS images per row. The atlas is kept as a chain of
+   levels, each one half the size of the previous one, from the 512 px
+   sources down to MIN_LEVEL_SIZE. The canvas renderer and the static layer
+   draw from a copy of the atlas with images of the cell size rounded up to
+   a power of two, made from the nearest larger level, so images aren't
+   rescaled on every draw and zooming only builds a new copy when it passes
+   a power of two. The last scaled copy is cached. Tiles get
+   ImagePatterns that show their part of a PATTERN_SIZE level. Until loading
+   has finished, the image types are painted with FALLBACK_COLOR.
+*/
 public class ImageLoader {
-    private static ImagePattern roadEdgeRightImagePattern;
-    private static ImagePattern roadEdgeLeftImagePattern;
-    private static ImagePattern roadDividerImagePattern;
-    private static ImagePattern dockDividerCrossLeftImagePattern;
-    private static ImagePattern dockDividerCrossRightImagePattern;
-    private static ImagePattern dockDividerHorizontalImagePattern;
-    private static ImagePattern dockDividerVerticalImagePattern;
-    private static ImagePattern dockEdgeBottomImagePattern;
-    private static ImagePattern dockEdgeCrossLeftImagePattern;
-    private static ImagePattern dockEdgeCrossRightImagePattern;
-    private static ImagePattern dockEdgeTopImagePattern;
-    private static ImagePattern dockEdgeLeftImagePattern;
-    private static ImagePattern dockEdgeRightImagePattern;
-    private static ImagePattern dockEdgeBottomConnLeftImagePattern;
-    private static ImagePattern dockEdgeBottomConnRightImagePattern;
-
-    static {
-        roadEdgeRightImagePattern = new ImagePattern(new Image(ImageLoader.class.getResourceAsStream("/com/github/nxmbit/ferriessimulator/images/ROAD_EDGE_RIGHT.png")));
-        roadEdgeLeftImagePattern = new ImagePattern(new Image(ImageLoader.class.getResourceAsStream("/com/github/nxmbit/ferriessimulator/images/ROAD_EDGE_LEFT.png")));
-        roadDividerImagePattern = new ImagePattern(new Image(ImageLoader.class.getResourceAsStream("/com/github/nxmbit/ferriessimulator/images/ROAD_DIVIDER.png")));
-        dockDividerCrossLeftImagePattern = new ImagePattern(new Image(ImageLoader.class.getResourceAsStream("/com/github/nxmbit/ferriessimulator/images/DOCK_DIVIDER_CROSS_LEFT.png")));
-        dockDividerCrossRightImagePattern = new ImagePattern(new Image(ImageLoader.class.getResourceAsStream("/com/github/nxmbit/ferriessimulator/images/DOCK_DIVIDER_CROSS_RIGHT.png")));
-        dockDividerHorizontalImagePattern = new ImagePattern(new Image(ImageLoader.class.getResourceAsStream("/com/github/nxmbit/ferriessimulator/images/DOCK_DIVIDER_HORIZONTAL.png")));
-        dockDividerVerticalImagePattern = new ImagePattern(new Image(ImageLoader.class.getResourceAsStream("/com/github/nxmbit/ferriessimulator/images/DOCK_DIVIDER_VERTICAL.png")));
-        dockEdgeBottomImagePattern = new ImagePattern(new Image(ImageLoader.class.getResourceAsStream("/com/github/nxmbit/ferriessimulator/images/DOCK_EDGE_BOTTOM.png")));
-        dockEdgeCrossLeftImagePattern = new ImagePattern(new Image(ImageLoader.class.getResourceAsStream("/com/github/nxmbit/ferriessimulator/images/DOCK_EDGE_CROSS_LEFT.png")));
-        dockEdgeCrossRightImagePattern = new ImagePattern(new Image(ImageLoader.class.getResourceAsStream("/com/github/nxmbit/ferriessimulator/images/DOCK_EDGE_CROSS_RIGHT.png")));
-        dockEdgeTopImagePattern = new ImagePattern(new Image(ImageLoader.class.getResourceAsStream("/com/github/nxmbit/ferriessimulator/images/DOCK_EDGE_TOP.png")));
-        dockEdgeLeftImagePattern = new ImagePattern(new Image(ImageLoader.class.getResourceAsStream("/com/github/nxmbit/ferriessimulator/images/DOCK_EDGE_LEFT.png")));
-        dockEdgeRightImagePattern = new ImagePattern(new Image(ImageLoader.class.getResourceAsStream("/com/github/nxmbit/ferriessimulator/images/DOCK_EDGE_RIGHT.png")));
-        dockEdgeBottomConnLeftImagePattern = new ImagePattern(new Image(ImageLoader.class.getResourceAsStream("/com/github/nxmbit/ferriessimulator/images/DOCK_EDGE_BOTTOM_CONN_LEFT.png")));
-        dockEdgeBottomConnRightImagePattern = new ImagePattern(new Image(ImageLoader.class.getResourceAsStream("/com/github/nxmbit/ferriessimulator/images/DOCK_EDGE_BOTTOM_CONN_RIGHT.png")));
-    }
-
-    public static ImagePattern getRoadEdgeRightImagePattern() {
-        return roadEdgeRightImagePattern;
-    }
-
-    public static ImagePattern getRoadEdgeLeftImagePattern() {
-        return roadEdgeLeftImagePattern;
-    }
-
-    public static ImagePattern getRoadDividerImagePattern() {
-        return roadDividerImagePattern;
-    }
-
-    public static ImagePattern getDockDividerCrossLeftImagePattern() {
-        return dockDividerCrossLeftImagePattern;
-    }
-
-    public static ImagePattern getDockDividerCrossRightImagePattern() {
-        return dockDividerCrossRightImagePattern;
-    }
-
-    public static ImagePattern getDockDividerHorizontalImagePattern() {
-        return dockDividerHorizontalImagePattern;
-    }
-
-    public static ImagePattern getDockDividerVerticalImagePattern() {
-        return dockDividerVerticalImagePattern;
-    }
-
-    public static ImagePattern getDockEdgeBottomImagePattern() {
-        return dockEdgeBottomImagePattern;
-    }
-
-    public static ImagePattern getDockEdgeCrossLeftImagePattern() {
-        return dockEdgeCrossLeftImagePattern;
-    }
-
-    public static ImagePattern getDockEdgeCrossRightImagePattern() {
-        return dockEdgeCrossRightImagePattern;
-    }
-
-    public static ImagePattern getDockEdgeTopImagePattern() {
-        return dockEdgeTopImagePattern;
-    }
-
-    public static ImagePattern getDockEdgeLeftImagePattern() {
-        return dockEdgeLeftImagePattern;
-    }
-
-    public static ImagePattern getDockEdgeRightImagePattern() {
-        return dockEdgeRightImagePattern;
-    }
-
-    public static ImagePattern getDockEdgeBottomConnLeftImagePattern() {
-        return dockEdgeBottomConnLeftImagePattern;
-    }
-
-    public static ImagePattern getDockEdgeBottomConnRightImagePattern() {
-        return dockEdgeBottomConnRightImagePattern;
-    }
-}
\ No newline at end of file
+    private static final String IMAGE_PATH = "/com/github/nxmbit/ferriessimulator/images/";
+    private static final TileType[] IMAGE_TYPES = {
+            TileType.ROAD_EDGE_RIGHT,
+            TileType.ROAD_EDGE_LEFT,
+            TileType.ROAD_DIVIDER,
+            TileType.DOCK_DIVIDER_CROSS_LEFT,
+            TileType.DOCK_DIVIDER_CROSS_RIGHT,
+            TileType.DOCK_DIVIDER_HORIZONTAL,
+            TileType.DOCK_DIVIDER_VERTICAL,
+            TileType.DOCK_EDGE_BOTTOM,
+            TileType.DOCK_EDGE_CROSS_LEFT,
+            TileType.DOCK_EDGE_CROSS_RIGHT,
+            TileType.DOCK_EDGE_TOP,
+            TileType.DOCK_EDGE_LEFT,
+            TileType.DOCK_EDGE_RIGHT,
+            TileType.DOCK_EDGE_BOTTOM_CONN_LEFT,
+            TileType.DOCK_EDGE_BOTTOM_CONN_RIGHT
+    };
+    private static final int ATLAS_COLUMNS = 4;
+    private static final int ATLAS_ROWS = (IMAGE_TYPES.length + ATLAS_COLUMNS - 1) / ATLAS_COLUMNS;
+    private static final int MIN_LEVEL_SIZE = 8;
+    private static final int PATTERN_SIZE = 256;
+    private static final Color FALLBACK_COLOR = Color.DARKGRAY;
+
+    // levels[i] holds the packed ARGB pixels of the atlas with images of levelSizes[i] pixels, largest first
+    private record Atlas(int[][] levels, int[] levelSizes, Map<TileType, Integer> slots, Map<TileType, ImagePattern> patterns) {
+    }
+
+    private record ScaledAtlas(int cellSize, WritableImage image) {
+    }
+
+    private static CompletableFuture<Void> loading;
+    private static volatile Atlas atlas; // null until loaded
+    private static ScaledAtlas scaledAtlas; // only used on the FX thread
+
+    // Starts loading on the first call, later calls return the same future
+    public static synchronized CompletableFuture<Void> loadAsync() {
+        if (loading == null) {
+            loading = CompletableFuture.runAsync(() -> atlas = loadAtlas());
+        }
+        return loading;
+    }
+
+    private static Atlas loadAtlas() {
+        int imageSize = 0;
+        int[] pixels = null;
+        for (int i = 0; i < IMAGE_TYPES.length; i++) {
+            String path = IMAGE_PATH + IMAGE_TYPES[i].name() + ".png";
+            Image image = new Image(ImageLoader.class.getResourceAsStream(path));
+            if (image.isError()) {
+                throw new IllegalStateException("Couldn't load " + path, image.getException());
+            }
+            if (pixels == null) {
+                imageSize = (int) image.getWidth();
+                pixels = new int[ATLAS_COLUMNS * imageSize * ATLAS_ROWS * imageSize];
+            }
+            if (image.getWidth() != imageSize || image.getHeight() != imageSize) {
+                throw new IllegalStateException(path + " isn't " + imageSize + "x" + imageSize + " like the other tile images");
+            }
+            image.getPixelReader().getPixels(0, 0, imageSize, imageSize, PixelFormat.getIntArgbInstance(),
+                    pixels, offset(i, imageSize), ATLAS_COLUMNS * imageSize);
+        }
+
+        List<int[]> levels = new ArrayList<>();
+        List<Integer> levelSizes = new ArrayList<>();
+        levels.add(pixels);
+        levelSizes.add(imageSize);
+        for (int size = imageSize / 2; size >= MIN_LEVEL_SIZE; size /= 2) {
+            levels.add(downsample(levels.getLast(), levelSizes.getLast(), size));
+            levelSizes.add(size);
+        }
+        int[][] levelPixels = levels.toArray(new int[0][]);
+        int[] sizes = levelSizes.stream().mapToInt(Integer::intValue).toArray();
+
+        int patternLevel = levelFor(sizes, PATTERN_SIZE);
+        WritableImage patternImage = toImage(levelPixels[patternLevel], sizes[patternLevel]);
+        Map<TileType, Integer> slots = new EnumMap<>(TileType.class);
+        Map<TileType, ImagePattern> patterns = new EnumMap<>(TileType.class);
+        for (int i = 0; i < IMAGE_TYPES.length; i++) {
+            slots.put(IMAGE_TYPES[i], i);
+            // Proportional to the shape, the atlas is stretched and shifted so only this image covers it
+            patterns.put(IMAGE_TYPES[i], new ImagePattern(patternImage, -(i % ATLAS_COLUMNS), -(i / ATLAS_COLUMNS),
+                    ATLAS_COLUMNS, ATLAS_ROWS, true));
+        }
+        return new Atlas(levelPixels, sizes, slots, patterns);
+    }
+
+    // Index of the first pixel of the image in the given slot, in an atlas with images of the given size
+    private static int offset(int slot, int size) {
+        return (slot / ATLAS_COLUMNS) * size * ATLAS_COLUMNS * size + (slot % ATLAS_COLUMNS) * size;
+    }
+
+    // The smallest level with images of at least size pixels, or the largest level
+    private static int levelFor(int[] levelSizes, int size) {
+        for (int i = levelSizes.length - 1; i > 0; i--) {
+            if (levelSizes[i] >= size) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    private static WritableImage toImage(int[] pixels, int size) {
+        WritableImage image = new WritableImage(ATLAS_COLUMNS * size, ATLAS_ROWS * size);
+        image.getPixelWriter().setPixels(0, 0, ATLAS_COLUMNS * size, ATLAS_ROWS * size, PixelFormat.getIntArgbInstance(),
+                pixels, 0, ATLAS_COLUMNS * size);
+        return image;
+    }
+
+    // The type's part of the atlas, or FALLBACK_COLOR while the images are still loading
+    public static Paint getPaint(TileType type) {
+        Atlas loaded = atlas;
+        if (loaded == null) {
+            return FALLBACK_COLOR;
+        }
+        return loaded.patterns().get(type);
+    }
+
+    // Draws the type's image into the square at (x, y), returns false if it has none or it isn't loaded yet
+    public static boolean drawImage(GraphicsContext gc, TileType type, double x, double y, double size) {
+        Atlas loaded = atlas;
+        Integer slot = loaded != null ? loaded.slots().get(type) : null;
+        if (slot == null) {
+            return false;
+        }
+
+        int cellSize = Math.clamp(Integer.highestOneBit(Math.max(1, (int) Math.ceil(size)) * 2 - 1), 1, loaded.levelSizes()[0]);
+        if (scaledAtlas == null || scaledAtlas.cellSize() != cellSize) {
+            int level = levelFor(loaded.levelSizes(), cellSize);
+            int[] pixels = downsample(loaded.levels()[level], loaded.levelSizes()[level], cellSize);
+            scaledAtlas = new ScaledAtlas(cellSize, toImage(pixels, cellSize));
+        }
+        gc.drawImage(scaledAtlas.image(), (slot % ATLAS_COLUMNS) * cellSize, (slot / ATLAS_COLUMNS) * cellSize,
+                cellSize, cellSize, x, y, size, size);
+        return true;
+    }
+
+    // Box filter over premultiplied colors, from images of sourceSize to targetSize pixels
+    private static int[] downsample(int[] source, int sourceSize, int targetSize) {
+        int sourceStride = ATLAS_COLUMNS * sourceSize;
+        int targetStride = ATLAS_COLUMNS * targetSize;
+        int[] target = new int[targetStride * ATLAS_ROWS * targetSize];
+        for (int slot = 0; slot < IMAGE_TYPES.length; slot++) {
+            int sourceOffset = offset(slot, sourceSize);
+            int targetOffset = offset(slot, targetSize);
+            for (int ty = 0; ty < targetSize; ty++) {
+                int y0 = ty * sourceSize / targetSize;
+                int y1 = Math.max(y0 + 1, (ty + 1) * sourceSize / targetSize);
+                for (int tx = 0; tx < targetSize; tx++) {
+                    int x0 = tx * sourceSize / targetSize;
+                    int x1 = Math.max(x0 + 1, (tx + 1) * sourceSize / targetSize);
+                    long a = 0, r = 0, g = 0, b = 0;
+                    for (int sy = y0; sy < y1; sy++) {
+                        for (int sx = x0; sx < x1; sx++) {
+                            int argb = source[sourceOffset + sy * sourceStride + sx];
+                            int alpha = argb >>> 24;
+                            a += alpha;
+                            r += ((argb >> 16) & 0xff) * alpha;
+                            g += ((argb >> 8) & 0xff) * alpha;
+                            b += (argb & 0xff) * alpha;
+                        }
+                    }
+                    int count = (y1 - y0) * (x1 - x0);
+                    target[targetOffset + ty * targetStride + tx] = a == 0 ? 0
+                            : (int) (a / count) << 24 | (int) (r / a) << 16 | (int) (g / a) << 8 | (int) (b / a);
+                }
+            }
+        }
+        return target;
+    }
+}
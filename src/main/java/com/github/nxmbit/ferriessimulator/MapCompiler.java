@@ -0,0 +1,47 @@
+package com.github.nxmbit.ferriessimulator;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+/*
+   Converts map.csv and map_properties.json into a compiled map, which the
+   simulation loads instead when the compiledMap setting points to it. The
+   compiled map is read back to check it, and both formats are loaded
+   LOAD_RUNS times to compare how long loading takes once the JVM has warmed up.
+   Usage: MapCompiler [output file]
+*/
+public class MapCompiler {
+    private static final String DEFAULT_OUTPUT = "map.bin";
+    private static final int LOAD_RUNS = 5;
+
+    public static void main(String[] args) throws IOException {
+        Path output = Path.of(args.length > 0 ? args[0] : DEFAULT_OUTPUT);
+        MapImport source = new MapImport();
+        source.writeCompiled(output);
+        System.out.println("Compiled the " + source.getGridWidth() + "x" + source.getGridHeight() + " map to " + output
+                + " (" + Files.size(output) + " bytes)");
+
+        MapImport compiled = new MapImport(output);
+        if (!Arrays.equals(compiled.readTileOrdinals(), source.readTileOrdinals())) {
+            throw new IllegalStateException(output + " doesn't hold the same tile types as map.csv");
+        }
+
+        System.out.printf("Loading took %.2f ms from map.csv and map_properties.json, %.2f ms from %s%n",
+                fastestLoad(MapImport::new) / 1e6, fastestLoad(() -> new MapImport(output)) / 1e6, output);
+    }
+
+    // Nanoseconds of the fastest of LOAD_RUNS loads, each reading the properties and the tile types
+    private static long fastestLoad(Supplier<MapImport> load) {
+        long fastest = Long.MAX_VALUE;
+        for (int i = 0; i < LOAD_RUNS; i++) {
+            long startTime = System.nanoTime();
+            MapImport mapImport = load.get();
+            mapImport.readTileOrdinals();
+            fastest = Math.min(fastest, System.nanoTime() - startTime);
+        }
+        return fastest;
+    }
+}
@@ -1,14 +1,38 @@
 package com.github.nxmbit.ferriessimulator;
 
-import java.io.BufferedReader;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
 import org.json.JSONObject;
 import org.json.JSONTokener;
 
+/*
+   The map: its tile types from map.csv and its properties from
+   map_properties.json, or both from a compiled map written by
+   writeCompiled. A compiled map is a header with the properties, the spawn
+   and quit points and the names of the tile types, followed by one byte per
+   cell (the index of its type in the header, -1 for none), row by row.
+   It is memory-mapped, and when the tile types are read its grid is copied
+   as it is and only remapped from header indices to TileType ordinals.
+   Everything else uses the MapModel made from it, which reads the map only once.
+*/
 public class MapImport {
-    private TileType[][] originalTileTypes;
+    private static final int COMPILED_MAGIC = 0x464d4150; // "FMAP"
+    private static final int COMPILED_VERSION = 1;
+
+    private final Map<Integer, GridPoint> spawnPoints = new HashMap<>();
+    private final Map<Integer, GridPoint> despawnPoints = new HashMap<>();
+    private ByteBuffer compiledGrid; // only for compiled maps
+    private TileType[] compiledTypes; // types by their index in the compiled map
 
     private int gridWidth;
     private int gridHeight;
@@ -111,99 +135,213 @@ public class MapImport {
         }
     }
 
-    private TileType convertToTileType(String tileSymbol) {
-        switch (tileSymbol) {
-            case "W":
-                return TileType.WATER;
-            case "R":
-                return TileType.ROAD;
-            case "REL":
-                return TileType.ROAD_EDGE_LEFT;
-            case "RER":
-                return TileType.ROAD_EDGE_RIGHT;
-            case "RD":
-                return TileType.ROAD_DIVIDER;
-            case "D":
-                return TileType.DOCK;
-            case "DDH":
-                return TileType.DOCK_DIVIDER_HORIZONTAL;
-            case "DDV":
-                return TileType.DOCK_DIVIDER_VERTICAL;
-            case "DDCR":
-                return TileType.DOCK_DIVIDER_CROSS_RIGHT;
-            case "DDCL":
-                return TileType.DOCK_DIVIDER_CROSS_LEFT;
-            case "DECR":
-                return TileType.DOCK_EDGE_CROSS_RIGHT;
-            case "DECL":
-                return TileType.DOCK_EDGE_CROSS_LEFT;
-            case "DEBCR":
-                return TileType.DOCK_EDGE_BOTTOM_CONN_RIGHT;
-            case "DEBCL":
-                return TileType.DOCK_EDGE_BOTTOM_CONN_LEFT;
-            case "DEL":
-                return TileType.DOCK_EDGE_LEFT;
-            case "DER":
-                return TileType.DOCK_EDGE_RIGHT;
-            case "DET":
-                return TileType.DOCK_EDGE_TOP;
-            case "DEB":
-                return TileType.DOCK_EDGE_BOTTOM;
-            case "DTL":
-                return TileType.DOCK_TURN_LEFT;
-            case "DTR":
-                return TileType.DOCK_TURN_RIGHT;
-            case "DSD":
-                return TileType.DOCK_STRAIGHT_DOWN;
-            case "DC":
-                return TileType.DOCK_CRITICAL_SECTION;
-            case "DQ":
-                return TileType.DOCK_QUEUE;
-            case "G":
-                return TileType.GRASS;
-            case "B":
-                return TileType.BEACH;
-            case "RS1":
-                return TileType.ROAD_SPAWN_DOCK_1;
-            case "RS2":
-                return TileType.ROAD_SPAWN_DOCK_2;
-            case "RQ1":
-                return TileType.ROAD_QUIT_DOCK_1;
-            case "RQ2":
-                return TileType.ROAD_QUIT_DOCK_2;
-            default:
-                throw new IllegalArgumentException("Invalid tile symbol: " + tileSymbol);
+    // Loads a map written by writeCompiled
+    public MapImport(Path compiledMap) {
+        try (FileChannel channel = FileChannel.open(compiledMap, StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel is closed
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != COMPILED_MAGIC || buffer.getInt() != COMPILED_VERSION) {
+                throw new IllegalArgumentException(compiledMap + " isn't a compiled map of version " + COMPILED_VERSION);
+            }
+            readHeader(buffer);
+            if (buffer.remaining() != gridWidth * gridHeight) {
+                throw new IllegalArgumentException(compiledMap + " doesn't hold a " + gridWidth + "x" + gridHeight + " grid");
+            }
+            this.compiledGrid = buffer.slice();
+        } catch (Exception e) {
+            e.printStackTrace();
+            throw new RuntimeException("Failed to load the compiled map " + compiledMap, e);
+        }
+    }
+
+    // The compiled map from the settings, or map.csv and map_properties.json if none is set
+    public static MapImport load(SettingsImport settings) {
+        String compiledMap = settings.getCompiledMap();
+        return compiledMap.isEmpty() ? new MapImport() : new MapImport(Path.of(compiledMap));
+    }
+
+    // Writes the map with its tile types in the compiled format read by MapImport(Path)
+    public void writeCompiled(Path file) throws IOException {
+        byte[] types = readTileOrdinals();
+        if (spawnPoints.isEmpty()) {
+            findSpawnAndDespawnPoints(types, gridWidth, spawnPoints, despawnPoints);
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(COMPILED_MAGIC);
+            out.writeInt(COMPILED_VERSION);
+            writeHeader(out, TileType.values()); // all types in ordinal order, so the indices are the ordinals
+            out.write(types);
+        }
+    }
+
+    // Must write exactly what readHeader reads
+    private void writeHeader(DataOutputStream out, TileType[] types) throws IOException {
+        out.writeInt(gridWidth);
+        out.writeInt(gridHeight);
+        out.writeInt(dockHeight);
+        out.writeInt(maxNumberOfFerries);
+        for (int value : new int[]{dock1ToDock2LaneCoordinateX, dock1ToDock2LaneCoordinateY, dock1ToDock2LaneCoordinateXEnd,
+                dock1ToDock2LaneCoordinateYEnd, dock1ToDock2GoDownToQueueCoordinateX,
+                dock2ToDock1LaneCoordinateX, dock2ToDock1LaneCoordinateY, dock2ToDock1LaneCoordinateXEnd,
+                dock2ToDock1LaneCoordinateYEnd, dock2ToDock1GoDownToQueueCoordinateX,
+                dock1EnteringCapacity, dock1ExitingCapacity, dock1FerryQueueSize,
+                dock1CriticalSectionCoordinateX, dock1CriticalSectionCoordinateY,
+                dock1CriticalSectionReturnCoordinateX, dock1CriticalSectionReturnCoordinateY,
+                dock1FerryQueueCoordinateX, dock1FerryQueueCoordinateY,
+                dock2EnteringCapacity, dock2ExitingCapacity, dock2FerryQueueSize,
+                dock2CriticalSectionCoordinateX, dock2CriticalSectionCoordinateY,
+                dock2CriticalSectionReturnCoordinateX, dock2CriticalSectionReturnCoordinateY,
+                dock2FerryQueueCoordinateX, dock2FerryQueueCoordinateY}) {
+            out.writeInt(value);
+        }
+        out.writeDouble(dock1FerryCoordinateX);
+        out.writeDouble(dock1FerryCoordinateY);
+        out.writeDouble(dock2FerryCoordinateX);
+        out.writeDouble(dock2FerryCoordinateY);
+
+        for (int dockId = 1; dockId <= 2; dockId++) {
+            out.writeInt(toCellIndex(spawnPoints.get(dockId)));
+            out.writeInt(toCellIndex(despawnPoints.get(dockId)));
+        }
+
+        out.writeInt(types.length);
+        for (TileType type : types) {
+            out.writeUTF(type.name());
+        }
+    }
+
+    private void readHeader(ByteBuffer in) {
+        gridWidth = in.getInt();
+        gridHeight = in.getInt();
+        dockHeight = in.getInt();
+        maxNumberOfFerries = in.getInt();
+        dock1ToDock2LaneCoordinateX = in.getInt();
+        dock1ToDock2LaneCoordinateY = in.getInt();
+        dock1ToDock2LaneCoordinateXEnd = in.getInt();
+        dock1ToDock2LaneCoordinateYEnd = in.getInt();
+        dock1ToDock2GoDownToQueueCoordinateX = in.getInt();
+        dock2ToDock1LaneCoordinateX = in.getInt();
+        dock2ToDock1LaneCoordinateY = in.getInt();
+        dock2ToDock1LaneCoordinateXEnd = in.getInt();
+        dock2ToDock1LaneCoordinateYEnd = in.getInt();
+        dock2ToDock1GoDownToQueueCoordinateX = in.getInt();
+        dock1EnteringCapacity = in.getInt();
+        dock1ExitingCapacity = in.getInt();
+        dock1FerryQueueSize = in.getInt();
+        dock1CriticalSectionCoordinateX = in.getInt();
+        dock1CriticalSectionCoordinateY = in.getInt();
+        dock1CriticalSectionReturnCoordinateX = in.getInt();
+        dock1CriticalSectionReturnCoordinateY = in.getInt();
+        dock1FerryQueueCoordinateX = in.getInt();
+        dock1FerryQueueCoordinateY = in.getInt();
+        dock2EnteringCapacity = in.getInt();
+        dock2ExitingCapacity = in.getInt();
+        dock2FerryQueueSize = in.getInt();
+        dock2CriticalSectionCoordinateX = in.getInt();
+        dock2CriticalSectionCoordinateY = in.getInt();
+        dock2CriticalSectionReturnCoordinateX = in.getInt();
+        dock2CriticalSectionReturnCoordinateY = in.getInt();
+        dock2FerryQueueCoordinateX = in.getInt();
+        dock2FerryQueueCoordinateY = in.getInt();
+        dock1FerryCoordinateX = in.getDouble();
+        dock1FerryCoordinateY = in.getDouble();
+        dock2FerryCoordinateX = in.getDouble();
+        dock2FerryCoordinateY = in.getDouble();
+
+        for (int dockId = 1; dockId <= 2; dockId++) {
+            putCell(spawnPoints, dockId, in.getInt());
+            putCell(despawnPoints, dockId, in.getInt());
+        }
+
+        // Stored by name, so the map stays readable when TileType changes
+        compiledTypes = new TileType[in.getInt()];
+        for (int i = 0; i < compiledTypes.length; i++) {
+            byte[] name = new byte[in.getShort()];
+            in.get(name);
+            compiledTypes[i] = TileType.valueOf(new String(name, StandardCharsets.UTF_8));
+        }
+    }
+
+    private int toCellIndex(GridPoint point) {
+        return point == null ? -1 : point.y() * gridWidth + point.x();
+    }
+
+    private void putCell(Map<Integer, GridPoint> points, int dockId, int cellIndex) {
+        if (cellIndex >= 0) {
+            points.put(dockId, new GridPoint(cellIndex % gridWidth, cellIndex / gridWidth));
+        }
+    }
+
+    // Scans the tile type ordinals, indexed like readTileOrdinals, for the spawn and quit tiles of both docks
+    public static void findSpawnAndDespawnPoints(byte[] types, int gridWidth, Map<Integer, GridPoint> spawnPoints,
+                                                 Map<Integer, GridPoint> despawnPoints) {
+        for (int index = 0; index < types.length; index++) {
+            GridPoint point = new GridPoint(index % gridWidth, index / gridWidth);
+            if (types[index] == TileType.ROAD_SPAWN_DOCK_1.ordinal()) {
+                spawnPoints.put(1, point);
+            } else if (types[index] == TileType.ROAD_SPAWN_DOCK_2.ordinal()) {
+                spawnPoints.put(2, point);
+            } else if (types[index] == TileType.ROAD_QUIT_DOCK_1.ordinal()) {
+                despawnPoints.put(1, point);
+            } else if (types[index] == TileType.ROAD_QUIT_DOCK_2.ordinal()) {
+                despawnPoints.put(2, point);
+            }
         }
     }
 
-    public Tile[][] generate(int gridWidth, int gridHeight, double tileSize) {
-        Tile[][] grid = new Tile[gridWidth][gridHeight];
-        originalTileTypes = new TileType[gridWidth][gridHeight];
-
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(getClass().getResourceAsStream("/com/github/nxmbit/ferriessimulator/map.csv")))) {
-            String line;
-            int i = 0;
-            while ((line = reader.readLine()) != null) {
-                String[] tileSymbols = line.split(",");
-                for (int j = 0; j < tileSymbols.length; j++) {
-                    TileType type = convertToTileType(tileSymbols[j]);
-                    Tile tile = new Tile(j * tileSize, i * tileSize, tileSize, tileSize, type, j, i);
-                    grid[j][i] = tile;
-                    originalTileTypes[j][i] = type; // Store the original type
+    // Spawn and quit points stored in a compiled map, empty for a map read from map.csv
+    public Map<Integer, GridPoint> getSpawnPoints() {
+        return spawnPoints;
+    }
+
+    public Map<Integer, GridPoint> getDespawnPoints() {
+        return despawnPoints;
+    }
+
+    // The TileType ordinals of the map indexed y * gridWidth + x, throws IllegalStateException for a cell without a tile
+    public byte[] readTileOrdinals() {
+        byte[] types = new byte[gridWidth * gridHeight];
+        if (compiledGrid != null) {
+            // Copied straight from the mapped grid, then remapped from header indices to ordinals
+            byte[] ordinals = new byte[compiledTypes.length];
+            for (int i = 0; i < compiledTypes.length; i++) {
+                ordinals[i] = (byte) compiledTypes[i].ordinal();
+            }
+            compiledGrid.get(0, types);
+            for (int index = 0; index < types.length; index++) {
+                int typeIndex = types[index];
+                if (typeIndex < 0 || typeIndex >= ordinals.length) { // -1 for none, anything else is a corrupt map
+                    throw noTile(index);
                 }
-                i++;
+                types[index] = ordinals[typeIndex];
             }
-        } catch (IOException e) {
-            System.err.println("Error reading the map file: " + e.getMessage());
-        } catch (IllegalArgumentException e) {
-            System.err.println("Error parsing the map file: " + e.getMessage());
+            return types;
         }
 
-        return grid;
+        // Parse errors keep their row and column, a map that can't be read must not look like one with missing tiles
+        TileType[][] parsed;
+        try (InputStream is = getClass().getResourceAsStream("/com/github/nxmbit/ferriessimulator/map.csv")) {
+            if (is == null) {
+                throw new IllegalArgumentException("Map file not found.");
+            }
+            parsed = MapParser.parse(is, gridWidth, gridHeight);
+        } catch (IOException | IllegalArgumentException e) {
+            throw new RuntimeException("Failed to load the map from map.csv: " + e.getMessage(), e);
+        }
+        for (int x = 0; x < gridWidth; x++) {
+            for (int y = 0; y < gridHeight; y++) {
+                if (parsed[x][y] == null) {
+                    throw noTile(y * gridWidth + x);
+                }
+                types[y * gridWidth + x] = (byte) parsed[x][y].ordinal();
+            }
+        }
+        return types;
     }
 
-    public TileType[][] getOriginalTileTypes() {
-        return originalTileTypes;
+    private IllegalStateException noTile(int index) {
+        return new IllegalStateException("The map has no tile at (" + index % gridWidth + ", " + index / gridWidth + ")");
     }
 
     public int getGridWidth() {
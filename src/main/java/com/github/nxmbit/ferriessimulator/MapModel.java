@@ -0,0 +1,111 @@
+package com.github.nxmbit.ferriessimulator;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+   The map as read by MapImport: the grid size, the geometry of both docks,
+   the spawn and quit points and the original tile type of every cell. It
+   never changes after loading, so there is one instance per map, cached
+   by load. The window, every simulation and every restart share it
+   instead of reading the map files again.
+*/
+public final class MapModel {
+    private static final Map<String, MapModel> CACHE = new ConcurrentHashMap<>();
+    private static final TileType[] TILE_TYPES = TileType.values();
+
+    // Where a dock and its lane to the other dock are, and how many vehicles and ferries it takes by default
+    public record DockGeometry(int enteringCapacity, int exitingCapacity, int ferryQueueSize,
+                               double ferryX, double ferryY, int criticalSectionX, int criticalSectionY,
+                               int criticalSectionReturnX, int criticalSectionReturnY, int ferryQueueX, int ferryQueueY,
+                               int laneStartX, int laneStartY, int laneEndX, int laneEndY, int goDownToQueueX) {
+    }
+
+    private final int gridWidth;
+    private final int gridHeight;
+    private final int dockHeight;
+    private final int maxNumberOfFerries;
+    private final DockGeometry dock1;
+    private final DockGeometry dock2;
+    private final byte[] originalTypes; // TileType ordinals, indexed like SimulationGrid
+    private final Map<Integer, GridPoint> spawnPoints;
+    private final Map<Integer, GridPoint> despawnPoints;
+
+    private MapModel(MapImport mapImport) {
+        this.gridWidth = mapImport.getGridWidth();
+        this.gridHeight = mapImport.getGridHeight();
+        this.dockHeight = mapImport.getDockHeight();
+        this.maxNumberOfFerries = mapImport.getMaxNumberOfFerries();
+        this.dock1 = new DockGeometry(mapImport.getDock1EnteringCapacity(), mapImport.getDock1ExitingCapacity(),
+                mapImport.getDock1FerryQueueSize(), mapImport.getDock1FerryCoordinateX(), mapImport.getDock1FerryCoordinateY(),
+                mapImport.getDock1CriticalSectionCoordinateX(), mapImport.getDock1CriticalSectionCoordinateY(),
+                mapImport.getDock1CriticalSectionReturnCoordinateX(), mapImport.getDock1CriticalSectionReturnCoordinateY(),
+                mapImport.getDock1FerryQueueCoordinateX(), mapImport.getDock1FerryQueueCoordinateY(),
+                mapImport.getDock1ToDock2LaneCoordinateX(), mapImport.getDock1ToDock2LaneCoordinateY(),
+                mapImport.getDock1ToDock2LaneCoordinateXEnd(), mapImport.getDock1ToDock2LaneCoordinateYEnd(),
+                mapImport.getDock1ToDock2GoDownToQueueCoordinateX());
+        this.dock2 = new DockGeometry(mapImport.getDock2EnteringCapacity(), mapImport.getDock2ExitingCapacity(),
+                mapImport.getDock2FerryQueueSize(), mapImport.getDock2FerryCoordinateX(), mapImport.getDock2FerryCoordinateY(),
+                mapImport.getDock2CriticalSectionCoordinateX(), mapImport.getDock2CriticalSectionCoordinateY(),
+                mapImport.getDock2CriticalSectionReturnCoordinateX(), mapImport.getDock2CriticalSectionReturnCoordinateY(),
+                mapImport.getDock2FerryQueueCoordinateX(), mapImport.getDock2FerryQueueCoordinateY(),
+                mapImport.getDock2ToDock1LaneCoordinateX(), mapImport.getDock2ToDock1LaneCoordinateY(),
+                mapImport.getDock2ToDock1LaneCoordinateXEnd(), mapImport.getDock2ToDock1LaneCoordinateYEnd(),
+                mapImport.getDock2ToDock1GoDownToQueueCoordinateX());
+
+        this.originalTypes = mapImport.readTileOrdinals();
+
+        // Compiled maps come with their spawn and quit points, a map read from map.csv has to be scanned for them
+        Map<Integer, GridPoint> spawns = new HashMap<>(mapImport.getSpawnPoints());
+        Map<Integer, GridPoint> despawns = new HashMap<>(mapImport.getDespawnPoints());
+        if (spawns.isEmpty()) {
+            MapImport.findSpawnAndDespawnPoints(originalTypes, gridWidth, spawns, despawns);
+        }
+        this.spawnPoints = Map.copyOf(spawns);
+        this.despawnPoints = Map.copyOf(despawns);
+    }
+
+    // The map selected by the settings, read from its files on the first call only
+    public static MapModel load(SettingsImport settings) {
+        return CACHE.computeIfAbsent(settings.getCompiledMap(), compiledMap -> new MapModel(MapImport.load(settings)));
+    }
+
+    public TileType getOriginalType(int x, int y) {
+        return TILE_TYPES[originalTypes[y * gridWidth + x]];
+    }
+
+    // Shared with every SimulationGrid of this map, it must not be modified
+    byte[] getOriginalTypes() {
+        return originalTypes;
+    }
+
+    public int getGridWidth() {
+        return gridWidth;
+    }
+
+    public int getGridHeight() {
+        return gridHeight;
+    }
+
+    public int getDockHeight() {
+        return dockHeight;
+    }
+
+    public int getMaxNumberOfFerries() {
+        return maxNumberOfFerries;
+    }
+
+    // Docks have the ids 1 and 2
+    public DockGeometry getDock(int dockId) {
+        return dockId == 1 ? dock1 : dock2;
+    }
+
+    public Map<Integer, GridPoint> getSpawnPoints() {
+        return spawnPoints;
+    }
+
+    public Map<Integer, GridPoint> getDespawnPoints() {
+        return despawnPoints;
+    }
+}
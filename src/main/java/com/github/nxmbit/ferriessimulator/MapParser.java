@@ -0,0 +1,124 @@
+package com.github.nxmbit.ferriessimulator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+import static java.util.Map.entry;
+
+/*
+   Reads a map in the map.csv format: one row of the grid per line, the
+   tile symbols of its cells separated by commas. The stream is read in
+   blocks of BUFFER_SIZE bytes and every byte moves one step through a trie
+   of the tile symbols, so a cell costs a few array reads and no String is
+   created for it. The trie is a flat table of ALPHABET_SIZE transitions per
+   node, node DEAD (which all missing transitions lead to) has no tile type,
+   so an unknown symbol is only noticed at the end of its cell.
+*/
+public class MapParser {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int ALPHABET_SIZE = 128; // symbols are ASCII
+    private static final int DEAD = 0;
+    private static final int ROOT = 1;
+
+    static final Map<String, TileType> TILE_SYMBOLS = Map.ofEntries(
+            entry("W", TileType.WATER),
+            entry("R", TileType.ROAD),
+            entry("REL", TileType.ROAD_EDGE_LEFT),
+            entry("RER", TileType.ROAD_EDGE_RIGHT),
+            entry("RD", TileType.ROAD_DIVIDER),
+            entry("D", TileType.DOCK),
+            entry("DDH", TileType.DOCK_DIVIDER_HORIZONTAL),
+            entry("DDV", TileType.DOCK_DIVIDER_VERTICAL),
+            entry("DDCR", TileType.DOCK_DIVIDER_CROSS_RIGHT),
+            entry("DDCL", TileType.DOCK_DIVIDER_CROSS_LEFT),
+            entry("DECR", TileType.DOCK_EDGE_CROSS_RIGHT),
+            entry("DECL", TileType.DOCK_EDGE_CROSS_LEFT),
+            entry("DEBCR", TileType.DOCK_EDGE_BOTTOM_CONN_RIGHT),
+            entry("DEBCL", TileType.DOCK_EDGE_BOTTOM_CONN_LEFT),
+            entry("DEL", TileType.DOCK_EDGE_LEFT),
+            entry("DER", TileType.DOCK_EDGE_RIGHT),
+            entry("DET", TileType.DOCK_EDGE_TOP),
+            entry("DEB", TileType.DOCK_EDGE_BOTTOM),
+            entry("DTL", TileType.DOCK_TURN_LEFT),
+            entry("DTR", TileType.DOCK_TURN_RIGHT),
+            entry("DSD", TileType.DOCK_STRAIGHT_DOWN),
+            entry("DC", TileType.DOCK_CRITICAL_SECTION),
+            entry("DQ", TileType.DOCK_QUEUE),
+            entry("G", TileType.GRASS),
+            entry("B", TileType.BEACH),
+            entry("RS1", TileType.ROAD_SPAWN_DOCK_1),
+            entry("RS2", TileType.ROAD_SPAWN_DOCK_2),
+            entry("RQ1", TileType.ROAD_QUIT_DOCK_1),
+            entry("RQ2", TileType.ROAD_QUIT_DOCK_2));
+
+    private static final int[] TRANSITIONS;
+    private static final TileType[] NODE_TYPES; // the type of the symbol ending at each node, or null
+
+    static {
+        int nodeCount = 2;
+        for (String symbol : TILE_SYMBOLS.keySet()) {
+            nodeCount += symbol.length();
+        }
+        int[] transitions = new int[nodeCount * ALPHABET_SIZE];
+        TileType[] nodeTypes = new TileType[nodeCount];
+        int nextNode = ROOT + 1;
+        for (Map.Entry<String, TileType> symbol : TILE_SYMBOLS.entrySet()) {
+            int node = ROOT;
+            for (int i = 0; i < symbol.getKey().length(); i++) {
+                int transition = node * ALPHABET_SIZE + symbol.getKey().charAt(i);
+                if (transitions[transition] == DEAD) {
+                    transitions[transition] = nextNode++;
+                }
+                node = transitions[transition];
+            }
+            nodeTypes[node] = symbol.getValue();
+        }
+        TRANSITIONS = transitions;
+        NODE_TYPES = nodeTypes;
+    }
+
+    // Returns the types indexed [x][y], throws IllegalArgumentException for unknown symbols or a map larger than the grid
+    public static TileType[][] parse(InputStream in, int gridWidth, int gridHeight) throws IOException {
+        TileType[][] types = new TileType[gridWidth][gridHeight];
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int node = ROOT;
+        int x = 0;
+        int y = 0;
+        int read;
+        while ((read = in.read(buffer)) > 0) {
+            for (int i = 0; i < read; i++) {
+                int b = buffer[i];
+                if (b == ',') {
+                    setCell(types, x++, y, node);
+                    node = ROOT;
+                } else if (b == '\n') {
+                    if (x > 0 || node != ROOT) { // blank lines are skipped
+                        setCell(types, x, y++, node);
+                    }
+                    x = 0;
+                    node = ROOT;
+                } else if (b != '\r') {
+                    // Bytes outside ASCII are negative and go to DEAD like any missing transition
+                    node = b >= 0 ? TRANSITIONS[node * ALPHABET_SIZE + b] : DEAD;
+                }
+            }
+        }
+        if (x > 0 || node != ROOT) { // the last line has no line break
+            setCell(types, x, y, node);
+        }
+        return types;
+    }
+
+    private static void setCell(TileType[][] types, int x, int y, int node) {
+        TileType type = NODE_TYPES[node];
+        if (type == null) {
+            throw new IllegalArgumentException("Invalid tile symbol in row " + (y + 1) + ", column " + (x + 1));
+        }
+        if (x >= types.length || y >= types[0].length) {
+            throw new IllegalArgumentException("Cell in row " + (y + 1) + ", column " + (x + 1) + " is outside the "
+                    + types.length + "x" + types[0].length + " grid");
+        }
+        types[x][y] = type;
+    }
+}
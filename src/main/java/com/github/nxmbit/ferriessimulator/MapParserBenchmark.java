@@ -0,0 +1,96 @@
+package com.github.nxmbit.ferriessimulator;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/*
+   Compares MapParser with the line-by-line parsing it replaced (readLine,
+   split on commas and a lookup per symbol String) on synthetic maps of
+   random tile symbols. Both parse the same map held in memory, so only the
+   parsing is measured. Each size is parsed WARMUP_RUNS times first, then
+   the average of MEASURED_RUNS is printed.
+   Usage: MapParserBenchmark [map width] [map heights...]
+*/
+public class MapParserBenchmark {
+    private static final int WARMUP_RUNS = 5;
+    private static final int MEASURED_RUNS = 10;
+
+    public static void main(String[] args) throws IOException {
+        int width = args.length > 0 ? Integer.parseInt(args[0]) : 1024;
+        int[] heights = args.length > 1
+                ? Arrays.stream(args, 1, args.length).mapToInt(Integer::parseInt).toArray()
+                : new int[]{1024, 2048, 4096};
+
+        for (int height : heights) {
+            byte[] map = generateMap(width, height, new Random(height));
+            if (!Arrays.deepEquals(MapParser.parse(new ByteArrayInputStream(map), width, height), parseLines(map, width, height))) {
+                throw new IllegalStateException("MapParser and the line parser disagree on the " + width + "x" + height + " map");
+            }
+
+            double lineTime = measure(() -> parseLines(map, width, height));
+            double parserTime = measure(() -> MapParser.parse(new ByteArrayInputStream(map), width, height));
+            long cells = (long) width * height;
+            System.out.printf("%dx%d (%d cells, %d MB): lines %.1f ms (%.1f ns/cell), MapParser %.1f ms (%.1f ns/cell), %.1fx%n",
+                    width, height, cells, map.length / (1024 * 1024), lineTime, lineTime * 1e6 / cells,
+                    parserTime, parserTime * 1e6 / cells, lineTime / parserTime);
+        }
+    }
+
+    private interface Parse {
+        TileType[][] run() throws IOException;
+    }
+
+    // Average milliseconds per run
+    private static double measure(Parse parse) throws IOException {
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            parse.run();
+        }
+        long startTime = System.nanoTime();
+        for (int i = 0; i < MEASURED_RUNS; i++) {
+            parse.run();
+        }
+        return (System.nanoTime() - startTime) / 1e6 / MEASURED_RUNS;
+    }
+
+    private static byte[] generateMap(int width, int height, Random random) {
+        List<String> symbols = List.copyOf(MapParser.TILE_SYMBOLS.keySet());
+        StringBuilder map = new StringBuilder(width * height * 3);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (x > 0) {
+                    map.append(',');
+                }
+                map.append(symbols.get(random.nextInt(symbols.size())));
+            }
+            map.append('\n');
+        }
+        return map.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    // How MapImport read the map before MapParser
+    private static TileType[][] parseLines(byte[] map, int width, int height) throws IOException {
+        TileType[][] types = new TileType[width][height];
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(map)))) {
+            String line;
+            int i = 0;
+            while ((line = reader.readLine()) != null) {
+                String[] tileSymbols = line.split(",");
+                for (int j = 0; j < tileSymbols.length; j++) {
+                    TileType type = MapParser.TILE_SYMBOLS.get(tileSymbols[j]);
+                    if (type == null) {
+                        throw new IllegalArgumentException("Invalid tile symbol: " + tileSymbols[j]);
+                    }
+                    types[j][i] = type;
+                }
+                i++;
+            }
+        }
+        return types;
+    }
+}
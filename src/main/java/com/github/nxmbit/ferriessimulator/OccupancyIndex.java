@@ -0,0 +1,70 @@
+package com.github.nxmbit.ferriessimulator;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/*
+   Maps every grid cell to the id of the vehicle standing in it, so finding
+   the vehicle at a given cell is a single array read instead of a scan over
+   all vehicles. A cell is claimed with a single compare-and-set, so two
+   vehicles can never end up in the same cell and no per-cell locks are needed.
+   Every successful claim and vacate marks the cell in the dirty set, which
+   covers moves, spawns, despawns and the critical-section paths alike.
+*/
+public class OccupancyIndex {
+    public static final int EMPTY = -1;
+
+    private final int gridWidth;
+    private final int gridHeight;
+    private final AtomicIntegerArray cells;
+    private final DirtyCellSet dirtyCells;
+
+    public OccupancyIndex(int gridWidth, int gridHeight) {
+        this.gridWidth = gridWidth;
+        this.gridHeight = gridHeight;
+        // Filled as a plain array and copied in at once, rather than with a volatile write per cell
+        int[] emptyCells = new int[gridWidth * gridHeight];
+        Arrays.fill(emptyCells, EMPTY);
+        this.cells = new AtomicIntegerArray(emptyCells);
+        this.dirtyCells = new DirtyCellSet(gridWidth * gridHeight);
+    }
+
+    private int index(int x, int y) {
+        return y * gridWidth + x;
+    }
+
+    // Returns the id of the vehicle at (x, y), or EMPTY
+    public int get(int x, int y) {
+        return cells.get(index(x, y));
+    }
+
+    // Returns false if the cell is already taken by another vehicle
+    public boolean tryClaim(int x, int y, int vehicleId) {
+        int index = index(x, y);
+        if (!cells.compareAndSet(index, EMPTY, vehicleId)) {
+            return false;
+        }
+        dirtyCells.mark(index);
+        return true;
+    }
+
+    // Only clears the cell if it still belongs to the given vehicle
+    public void vacate(int x, int y, int vehicleId) {
+        int index = index(x, y);
+        if (cells.compareAndSet(index, vehicleId, EMPTY)) {
+            dirtyCells.mark(index);
+        }
+    }
+
+    public DirtyCellSet getDirtyCells() {
+        return dirtyCells;
+    }
+
+    public int getGridWidth() {
+        return gridWidth;
+    }
+
+    public int getGridHeight() {
+        return gridHeight;
+    }
+}
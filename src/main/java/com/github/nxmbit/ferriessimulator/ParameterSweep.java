@@ -0,0 +1,190 @@
+package com.github.nxmbit.ferriessimulator;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/*
+   Runs many headless simulations with different settings in parallel and
+   collects their statistics into one table. The sweep is described by a JSON
+   file (sweep.json in the resources by default), where every parameter is a
+   settings.json key with the list of values to try. Every combination of the
+   values is run, or "samples" random combinations if given. Each combination
+   is repeated "repetitions" times, since vehicle arrivals are random.
+
+   Every run is an independent simulation with its own SimulationContext, so
+   runs share the JVM and execute in parallel, one per core.
+   Usage: ParameterSweep [sweep file] [results CSV file]
+*/
+public class ParameterSweep {
+    private static final String DEFAULT_SWEEP = "/com/github/nxmbit/ferriessimulator/sweep.json";
+    private static final String DEFAULT_RESULTS = "sweep-results.csv";
+    private static final String[] RESULT_COLUMNS = {"vehiclesSpawned", "vehiclesDelivered", "throughput",
+            "averageWaitTime", "maxWaitTime", "averageTripTime", "ferryDepartures", "averageFerryLoad"};
+
+    private record SweepRun(int index, JSONObject settings, int repetition) {
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        JSONObject sweep = readSweep(args.length > 0 ? args[0] : null);
+        String resultsFile = args.length > 1 ? args[1] : DEFAULT_RESULTS;
+        double simulatedHours = sweep.getDouble("simulatedHours");
+        int repetitions = sweep.optInt("repetitions", 1);
+        JSONObject parameters = sweep.getJSONObject("parameters");
+        List<String> parameterNames = new ArrayList<>(parameters.keySet());
+        parameterNames.sort(null);
+
+        List<JSONObject> combinations;
+        if (sweep.has("samples")) {
+            Random random = sweep.has("seed") ? new Random(sweep.getLong("seed")) : new Random();
+            combinations = sampleCombinations(parameters, parameterNames, sweep.getInt("samples"), random);
+        } else {
+            combinations = gridCombinations(parameters, parameterNames);
+        }
+
+        List<SweepRun> runs = new ArrayList<>();
+        for (JSONObject combination : combinations) {
+            for (int repetition = 0; repetition < repetitions; repetition++) {
+                runs.add(new SweepRun(runs.size(), combination, repetition));
+            }
+        }
+
+        int threads = Runtime.getRuntime().availableProcessors();
+        System.out.println("Running " + runs.size() + " simulations of " + simulatedHours + " h on " + threads + " threads");
+        long startTime = System.currentTimeMillis();
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<JSONObject>> futures = new ArrayList<>();
+        for (SweepRun run : runs) {
+            futures.add(executor.submit(() -> {
+                // The logging of all runs would only contend for the console, only progress and results are shown
+                JSONObject settings = new JSONObject(run.settings().toString()).put("logging", false);
+                JSONObject result = HeadlessSimulation.runSimulation(new SettingsImport(settings), simulatedHours).toJson();
+                System.out.println("Finished run " + (run.index() + 1) + "/" + runs.size());
+                return result;
+            }));
+        }
+
+        List<String> header = new ArrayList<>();
+        header.add("run");
+        header.add("repetition");
+        header.addAll(parameterNames);
+        header.addAll(List.of(RESULT_COLUMNS));
+
+        List<List<String>> rows = new ArrayList<>();
+        for (SweepRun run : runs) {
+            JSONObject result;
+            try {
+                result = futures.get(run.index()).get();
+            } catch (ExecutionException e) {
+                System.out.println("Run " + run.index() + " failed: " + e.getCause());
+                continue;
+            }
+
+            List<String> row = new ArrayList<>();
+            row.add(String.valueOf(run.index()));
+            row.add(String.valueOf(run.repetition()));
+            for (String name : parameterNames) {
+                row.add(String.valueOf(run.settings().get(name)));
+            }
+            for (String column : RESULT_COLUMNS) {
+                row.add(formatValue(result.get(column)));
+            }
+            rows.add(row);
+        }
+        executor.shutdown();
+
+        printTable(header, rows);
+        writeCsv(resultsFile, header, rows);
+        System.out.println("Finished " + rows.size() + " of " + runs.size() + " runs in "
+                + (System.currentTimeMillis() - startTime) + " ms, results written to " + resultsFile);
+    }
+
+    private static JSONObject readSweep(String path) throws IOException {
+        try (InputStream is = path != null ? new FileInputStream(path) : ParameterSweep.class.getResourceAsStream(DEFAULT_SWEEP)) {
+            if (is == null) {
+                throw new IllegalArgumentException("Sweep file not found.");
+            }
+            return new JSONObject(new JSONTokener(is));
+        }
+    }
+
+    // Every combination of the parameter values
+    private static List<JSONObject> gridCombinations(JSONObject parameters, List<String> parameterNames) {
+        List<JSONObject> combinations = new ArrayList<>();
+        combinations.add(new JSONObject());
+        for (String name : parameterNames) {
+            JSONArray values = parameters.getJSONArray(name);
+            List<JSONObject> extended = new ArrayList<>();
+            for (JSONObject combination : combinations) {
+                for (int i = 0; i < values.length(); i++) {
+                    extended.add(new JSONObject(combination.toMap()).put(name, values.get(i)));
+                }
+            }
+            combinations = extended;
+        }
+        return combinations;
+    }
+
+    private static List<JSONObject> sampleCombinations(JSONObject parameters, List<String> parameterNames, int samples, Random random) {
+        List<JSONObject> combinations = new ArrayList<>();
+        for (int sample = 0; sample < samples; sample++) {
+            JSONObject combination = new JSONObject();
+            for (String name : parameterNames) {
+                JSONArray values = parameters.getJSONArray(name);
+                combination.put(name, values.get(random.nextInt(values.length())));
+            }
+            combinations.add(combination);
+        }
+        return combinations;
+    }
+
+    private static String formatValue(Object value) {
+        if (value instanceof Number number && !(value instanceof Integer || value instanceof Long)) {
+            return String.format("%.2f", number.doubleValue());
+        }
+        return String.valueOf(value);
+    }
+
+    private static void printTable(List<String> header, List<List<String>> rows) {
+        int[] widths = new int[header.size()];
+        for (int i = 0; i < header.size(); i++) {
+            widths[i] = header.get(i).length();
+            for (List<String> row : rows) {
+                widths[i] = Math.max(widths[i], row.get(i).length());
+            }
+        }
+
+        List<List<String>> lines = new ArrayList<>();
+        lines.add(header);
+        lines.addAll(rows);
+        for (List<String> line : lines) {
+            StringBuilder builder = new StringBuilder();
+            for (int i = 0; i < line.size(); i++) {
+                builder.append(String.format("%" + widths[i] + "s  ", line.get(i)));
+            }
+            System.out.println(builder.toString().stripTrailing());
+        }
+    }
+
+    private static void writeCsv(String path, List<String> header, List<List<String>> rows) throws IOException {
+        try (PrintWriter writer = new PrintWriter(path)) {
+            writer.println(String.join(",", header));
+            for (List<String> row : rows) {
+                writer.println(String.join(",", row));
+            }
+        }
+    }
+}
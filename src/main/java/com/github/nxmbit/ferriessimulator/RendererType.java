@@ -0,0 +1,6 @@
+package com.github.nxmbit.ferriessimulator;
+
+public enum RendererType {
+    NODES, // every cell is a Tile node and every ferry a FerryView in the scene graph
+    CANVAS // the grid, vehicles and ferries are painted onto a single Canvas
+}
@@ -4,6 +4,7 @@ import org.json.JSONObject;
 import org.json.JSONTokener;
 
 import java.io.InputStream;
+import java.util.Iterator;
 
 public class SettingsImport {
     private int maxVehicles;
@@ -16,13 +17,37 @@ public class SettingsImport {
     private double minRandomVehicleSpeed;
     private double maxRandomVehicleSpeed;
     private double leftRightDockSpawnBalance;
+    private ExecutionMode executionMode;
+    private long tickInterval;
+    private double simulatedHours;
+    private double timeScale;
+    private RendererType renderer;
+    private long frameExportInterval;
+    private String frameExportDirectory;
+    private int frameExportCellSize;
+    private String compiledMap;
+    private boolean logging;
+    private boolean frameTimeReport;
 
     public SettingsImport() {
+        this(new JSONObject());
+    }
+
+    // Values in overrides replace the ones from settings.json, keys have to be existing settings
+    public SettingsImport(JSONObject overrides) {
         try (InputStream is = getClass().getResourceAsStream("/com/github/nxmbit/ferriessimulator/settings.json")) {
             if (is == null) {
                 throw new IllegalArgumentException("Settings file not found.");
             }
             JSONObject obj = new JSONObject(new JSONTokener(is));
+            Iterator<String> keys = overrides.keys();
+            while (keys.hasNext()) {
+                String key = keys.next();
+                if (!obj.has(key)) {
+                    throw new IllegalArgumentException("Unknown setting: " + key);
+                }
+                obj.put(key, overrides.get(key));
+            }
             this.maxVehicles = obj.getInt("maxVehicles");
             this.vehiclesSpawnInterval = obj.getLong("vehiclesSpawnInterval");
             this.minRandomFerryCapacity = obj.getInt("minRandomFerryCapacity");
@@ -33,6 +58,17 @@ public class SettingsImport {
             this.minRandomVehicleSpeed = obj.getDouble("minRandomVehicleSpeed");
             this.maxRandomVehicleSpeed = obj.getDouble("maxRandomVehicleSpeed");
             this.leftRightDockSpawnBalance = obj.getDouble("leftRightDockSpawnBalance");
+            this.executionMode = obj.getEnum(ExecutionMode.class, "executionMode");
+            this.tickInterval = obj.getLong("tickInterval");
+            this.simulatedHours = obj.getDouble("simulatedHours");
+            this.timeScale = obj.getDouble("timeScale");
+            this.renderer = obj.getEnum(RendererType.class, "renderer");
+            this.frameExportInterval = obj.getLong("frameExportInterval");
+            this.frameExportDirectory = obj.getString("frameExportDirectory");
+            this.frameExportCellSize = obj.getInt("frameExportCellSize");
+            this.compiledMap = obj.getString("compiledMap");
+            this.logging = obj.getBoolean("logging");
+            this.frameTimeReport = obj.getBoolean("frameTimeReport");
         } catch (Exception e) {
             e.printStackTrace();
             throw new RuntimeException("Failed to load settings from file. ", e);
@@ -79,4 +115,50 @@ public class SettingsImport {
     public double getLeftRightDockSpawnBalance() {
         return leftRightDockSpawnBalance;
     }
+
+    public ExecutionMode getExecutionMode() {
+        return executionMode;
+    }
+
+    public long getTickInterval() {
+        return tickInterval;
+    }
+
+    public double getSimulatedHours() {
+        return simulatedHours;
+    }
+
+    public double getTimeScale() {
+        return timeScale;
+    }
+
+    public RendererType getRenderer() {
+        return renderer;
+    }
+
+    // Simulated milliseconds between exported frames, 0 if no frames are exported
+    public long getFrameExportInterval() {
+        return frameExportInterval;
+    }
+
+    public String getFrameExportDirectory() {
+        return frameExportDirectory;
+    }
+
+    public int getFrameExportCellSize() {
+        return frameExportCellSize;
+    }
+
+    // Path of a map written by MapCompiler, empty to read map.csv and map_properties.json
+    public String getCompiledMap() {
+        return compiledMap;
+    }
+
+    public boolean isLogging() {
+        return logging;
+    }
+
+    public boolean isFrameTimeReport() {
+        return frameTimeReport;
+    }
 }
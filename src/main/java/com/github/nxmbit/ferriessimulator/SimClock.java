@@ -0,0 +1,121 @@
+package com.github.nxmbit.ferriessimulator;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+   The single source of simulated time. A real-time clock runs at timeScale
+   times the wall clock and can be sped up or slowed down while running: the
+   clock publishes a new anchor with the next epoch. Threads in sleep()
+   register themselves and park on their own for the whole remaining time,
+   there is no lock and no polling. A scale change unparks the registered
+   sleepers, which work out their wall clock deadline again from the new
+   anchor and park for the rest. A manual clock (used by the discrete-event engine) only moves when
+   advanced.
+*/
+public class SimClock {
+    public static final double MIN_TIME_SCALE = 0.25;
+    public static final double MAX_TIME_SCALE = 100;
+
+    // Simulated time was anchorSimMillis at anchorWallNanos and runs at timeScale since then
+    private record Anchor(long anchorWallNanos, long anchorSimMillis, double timeScale, long epoch) {
+        long simMillisAt(long wallNanos) {
+            return anchorSimMillis + (long) ((wallNanos - anchorWallNanos) / 1_000_000.0 * timeScale);
+        }
+
+        long wallNanosAt(long simMillis) {
+            return anchorWallNanos + (long) ((simMillis - anchorSimMillis) * 1_000_000 / timeScale);
+        }
+    }
+
+    private final boolean manual;
+    private volatile Anchor anchor;
+    private final Set<Thread> sleepers;
+
+    public SimClock(double timeScale) {
+        this(false, clampTimeScale(timeScale));
+    }
+
+    private SimClock(boolean manual, double timeScale) {
+        this.manual = manual;
+        this.anchor = new Anchor(System.nanoTime(), 0, timeScale, 0);
+        this.sleepers = ConcurrentHashMap.newKeySet();
+    }
+
+    public static SimClock manual() {
+        return new SimClock(true, 0);
+    }
+
+    private static double clampTimeScale(double timeScale) {
+        return Math.max(MIN_TIME_SCALE, Math.min(MAX_TIME_SCALE, timeScale));
+    }
+
+    // Current simulated time in milliseconds since the start of the simulation
+    public long currentTimeMillis() {
+        return anchor.simMillisAt(System.nanoTime());
+    }
+
+    // A manual clock runs as fast as its owner advances it, not along the wall clock
+    public boolean isManual() {
+        return manual;
+    }
+
+    public double getTimeScale() {
+        return anchor.timeScale();
+    }
+
+    public void setTimeScale(double timeScale) {
+        if (manual) {
+            return;
+        }
+
+        // Only the controls change the scale, so there's a single writer and the epoch can't be lost
+        Anchor current = anchor;
+        long now = System.nanoTime();
+        anchor = new Anchor(now, current.simMillisAt(now), clampTimeScale(timeScale), current.epoch() + 1);
+        // A sleeper registered too late to be seen here reads the new anchor after registering
+        for (Thread sleeper : sleepers) {
+            LockSupport.unpark(sleeper);
+        }
+    }
+
+    // Moves a manual clock forward, simulated time never goes back
+    public void advanceTo(long simMillis) {
+        if (!manual) {
+            throw new IllegalStateException("Only a manual clock can be advanced");
+        }
+        if (simMillis > anchor.anchorSimMillis()) {
+            anchor = new Anchor(0, simMillis, 0, anchor.epoch() + 1);
+        }
+    }
+
+    // Sleeps for the given simulated time, following time scale changes made in the meantime
+    public void sleep(long simMillis) throws InterruptedException {
+        if (manual) {
+            throw new IllegalStateException("A manual clock can't be slept on, it's only advanced by its owner");
+        }
+
+        Thread thread = Thread.currentThread();
+        sleepers.add(thread);
+        try {
+            Anchor current = anchor; // read after registering, so no scale change can be missed
+            long wakeUpTime = current.simMillisAt(System.nanoTime()) + simMillis;
+            long deadline = current.wallNanosAt(wakeUpTime);
+            long remaining;
+            while ((remaining = deadline - System.nanoTime()) > 0) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                LockSupport.parkNanos(this, remaining);
+                Anchor latest = anchor;
+                if (latest.epoch() != current.epoch()) {
+                    current = latest;
+                    deadline = current.wallNanosAt(wakeUpTime);
+                }
+            }
+        } finally {
+            sleepers.remove(thread);
+        }
+    }
+}
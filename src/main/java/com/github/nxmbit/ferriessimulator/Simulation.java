@@ -5,122 +5,149 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
-import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class Simulation implements Runnable {
-    private static final List<Vehicle> vehicles = Collections.synchronizedList(new ArrayList<>());
+    private static final long SNAPSHOT_INTERVAL = 30; // wall-clock milliseconds between snapshots with entity threads
+    private SimulationContext context;
     private final List<Ferry> ferries;
     private VehicleSpawner vehicleSpawner;
+    private TickEngine tickEngine;
+    private DiscreteEventEngine eventEngine;
+    private ExecutorService entityExecutor;
 
-    private MapImport mapImport;
+    private final MapModel mapModel;
     private final SettingsImport settings;
+    private final ExecutionMode executionMode;
+    private long simulatedDuration;
+    private FrameExporter frameExporter;
 
     private Dock leftDock;
     private Dock rightDock;
 
-    private Map<Integer, Tile> spawnPoints;
-    private Map<Integer, Tile> despawnPoints;
-    private static Map<Integer, Dock> docks;
+    private final Map<Integer, GridPoint> spawnPoints;
+    private final Map<Integer, GridPoint> despawnPoints;
 
     private boolean simulationRunning;
 
 
     public Simulation() {
-        this.ferries = Collections.synchronizedList(new ArrayList<>());
-        this.spawnPoints = new HashMap<>();
-        this.despawnPoints = new HashMap<>();
-        this.docks = new HashMap<>();
-        this.mapImport = new MapImport();
-        this.settings = new SettingsImport();
-        this.simulationRunning = true;
+        this(new SettingsImport());
     }
 
-    private void setSpawnAndDespawnPoints(Tile[][] grid) {
-        for (int i = 0; i < grid.length; i++) {
-            for (int j = 0; j < grid[i].length; j++) {
-                Tile tile = grid[i][j];
-                if (tile.getType() == TileType.ROAD_SPAWN_DOCK_1) {
-                    spawnPoints.put(1, tile);
-                } else if (tile.getType() == TileType.ROAD_SPAWN_DOCK_2) {
-                    spawnPoints.put(2, tile);
-                } else if (tile.getType() == TileType.ROAD_QUIT_DOCK_1) {
-                    despawnPoints.put(1, tile);
-                } else if (tile.getType() == TileType.ROAD_QUIT_DOCK_2) {
-                    despawnPoints.put(2, tile);
-                }
-            }
-        }
+    // Runs in the given mode instead of the one from the settings
+    public Simulation(ExecutionMode executionMode) {
+        this(executionMode, new SettingsImport());
+    }
+
+    // Uses already loaded settings, so nothing is read from disk
+    public Simulation(SettingsImport settings) {
+        this(null, settings);
+    }
+
+    public Simulation(ExecutionMode executionMode, SettingsImport settings) {
+        this.ferries = Collections.synchronizedList(new ArrayList<>());
+        this.mapModel = MapModel.load(settings);
+        this.spawnPoints = mapModel.getSpawnPoints();
+        this.despawnPoints = mapModel.getDespawnPoints();
+        this.settings = settings;
+        this.executionMode = executionMode != null ? executionMode : settings.getExecutionMode();
+        this.simulatedDuration = (long) (settings.getSimulatedHours() * 3_600_000);
+        this.simulationRunning = true;
     }
 
-    public Map<Integer, Tile> getSpawnPoints() {
+    public Map<Integer, GridPoint> getSpawnPoints() {
         return spawnPoints;
     }
 
-    public Map<Integer, Tile> getDespawnPoints() {
+    public Map<Integer, GridPoint> getDespawnPoints() {
         return despawnPoints;
     }
 
-    public void setup(int dockHeight, double tileSize, Tile[][] grid, TileType[][] originalTileTypes,
+    public void setup(int dockHeight, double tileSize, SimulationGrid grid,
                       int dock1EnteringCapacity, int dock1ExitingCapacity, int dock2EnteringCapacity, int dock2ExitingCapacity,
                       double ferrySpeed, int dock1FerriesSpawned, int dock2FerriesSpawned, int minLoadingTime, int maxLoadingTime,
                       int minFerryCapacity, int maxFerryCapacity) {
-        setSpawnAndDespawnPoints(grid);
-
-        leftDock = new Dock(dock1EnteringCapacity, dock1ExitingCapacity,
-                mapImport.getDock1FerryCoordinateX(), mapImport.getDock1FerryCoordinateY(),
-                mapImport.getDock1CriticalSectionCoordinateX(), mapImport.getDock1CriticalSectionCoordinateY(),
-                mapImport.getDock1CriticalSectionReturnCoordinateX(), mapImport.getDock1CriticalSectionReturnCoordinateY(),
-                mapImport.getDock1FerryQueueSize(), mapImport.getDock1FerryQueueCoordinateX(), mapImport.getDock1FerryQueueCoordinateY(),
-                mapImport.getDock1ToDock2LaneCoordinateX(), mapImport.getDock1ToDock2LaneCoordinateY(),
-                mapImport.getDock1ToDock2LaneCoordinateXEnd(), mapImport.getDock1ToDock2LaneCoordinateYEnd(), mapImport.getDock1ToDock2GoDownToQueueCoordinateX());
-        rightDock = new Dock(dock2EnteringCapacity, dock2ExitingCapacity,
-                mapImport.getDock2FerryCoordinateX(), mapImport.getDock2FerryCoordinateY(),
-                mapImport.getDock2CriticalSectionCoordinateX(), mapImport.getDock2CriticalSectionCoordinateY(),
-                mapImport.getDock2CriticalSectionReturnCoordinateX(), mapImport.getDock2CriticalSectionReturnCoordinateY(),
-                mapImport.getDock2FerryQueueSize(), mapImport.getDock2FerryQueueCoordinateX(), mapImport.getDock2FerryQueueCoordinateY(),
-                mapImport.getDock2ToDock1LaneCoordinateX(), mapImport.getDock2ToDock1LaneCoordinateY(),
-                mapImport.getDock2ToDock1LaneCoordinateXEnd(), mapImport.getDock2ToDock1LaneCoordinateYEnd(), mapImport.getDock2ToDock1GoDownToQueueCoordinateX());
-
-        docks.put(1, leftDock);
-        docks.put(2, rightDock);
+        // The event engine sets the time itself, every other mode follows the wall clock at the chosen time scale
+        SimClock clock = executionMode == ExecutionMode.DISCRETE_EVENT ? SimClock.manual() : new SimClock(settings.getTimeScale());
+        context = new SimulationContext(grid, clock, new Random(), mapModel.getMaxNumberOfFerries(),
+                settings.getMaxVehicles(), settings.isLogging());
+
+        leftDock = createDock(mapModel.getDock(1), dock1EnteringCapacity, dock1ExitingCapacity);
+        rightDock = createDock(mapModel.getDock(2), dock2EnteringCapacity, dock2ExitingCapacity);
+
+        context.addDock(1, leftDock);
+        context.addDock(2, rightDock);
 
         ferries.clear();
         int totalFerries = 0;
-        int maxFerries = mapImport.getMaxNumberOfFerries();
+        int maxFerries = mapModel.getMaxNumberOfFerries();
 
         for (int i = 0; i < dock1FerriesSpawned && totalFerries < maxFerries; i++, totalFerries++) {
-            int capacity = minFerryCapacity + new Random().nextInt(maxFerryCapacity);
-            int loadingTime = (minLoadingTime + new Random().nextInt(maxLoadingTime)) * 1000;
-            Ferry ferry = new Ferry(ferrySpeed, capacity, leftDock, rightDock, loadingTime, tileSize, dockHeight);
+            int capacity = minFerryCapacity + context.getRandom().nextInt(maxFerryCapacity);
+            int loadingTime = (minLoadingTime + context.getRandom().nextInt(maxLoadingTime)) * 1000;
+            Ferry ferry = new Ferry(ferrySpeed, capacity, leftDock, rightDock, loadingTime, tileSize, dockHeight,
+                    executionMode, context);
             leftDock.addFerryToQueueOnSpawn(ferry);
             ferry.setQueuePosition(i);
             ferries.add(ferry);
         }
 
         for (int i = 0; i < dock2FerriesSpawned && totalFerries < maxFerries; i++, totalFerries++) {
-            int capacity = minFerryCapacity + new Random().nextInt(maxFerryCapacity);
-            int loadingTime = (minLoadingTime + new Random().nextInt(maxLoadingTime)) * 1000;
-            Ferry ferry = new Ferry(ferrySpeed, capacity, rightDock, leftDock, loadingTime, tileSize, dockHeight);
+            int capacity = minFerryCapacity + context.getRandom().nextInt(maxFerryCapacity);
+            int loadingTime = (minLoadingTime + context.getRandom().nextInt(maxLoadingTime)) * 1000;
+            Ferry ferry = new Ferry(ferrySpeed, capacity, rightDock, leftDock, loadingTime, tileSize, dockHeight,
+                    executionMode, context);
             rightDock.addFerryToQueueOnSpawn(ferry);
             ferry.setQueuePosition(i);
             ferries.add(ferry);
         }
 
-        vehicleSpawner = new VehicleSpawner(docks, grid, settings.getMaxVehicles(), spawnPoints, despawnPoints, originalTileTypes,
-                settings.getVehiclesSpawnInterval(), vehicles, settings.getLeftRightDockSpawnBalance(),
-                settings.getMinRandomVehicleSpeed(), settings.getMaxRandomVehicleSpeed());
+        if (executionMode == ExecutionMode.TICK_ENGINE) {
+            tickEngine = new TickEngine(context, ferries, settings.getTickInterval());
+        } else if (executionMode == ExecutionMode.DISCRETE_EVENT) {
+            eventEngine = new DiscreteEventEngine(context, ferries);
+        } else {
+            entityExecutor = createEntityExecutor(executionMode);
+        }
+
+        vehicleSpawner = new VehicleSpawner(context, settings.getMaxVehicles(), spawnPoints, despawnPoints,
+                settings.getVehiclesSpawnInterval(), entityExecutor, settings.getLeftRightDockSpawnBalance(),
+                settings.getMinRandomVehicleSpeed(), settings.getMaxRandomVehicleSpeed(), executionMode, eventEngine);
+        if (eventEngine != null) {
+            eventEngine.setVehicleSpawner(vehicleSpawner);
+        }
+    }
+
+    private static Dock createDock(MapModel.DockGeometry geometry, int enteringCapacity, int exitingCapacity) {
+        return new Dock(enteringCapacity, exitingCapacity, geometry.ferryX(), geometry.ferryY(),
+                geometry.criticalSectionX(), geometry.criticalSectionY(),
+                geometry.criticalSectionReturnX(), geometry.criticalSectionReturnY(),
+                geometry.ferryQueueSize(), geometry.ferryQueueX(), geometry.ferryQueueY(),
+                geometry.laneStartX(), geometry.laneStartY(), geometry.laneEndX(), geometry.laneEndY(), geometry.goDownToQueueX());
+    }
+
+    public SimulationContext getContext() {
+        return context;
+    }
+
+    public SimulationGrid getGrid() {
+        return context.getGrid();
     }
 
     public List<Ferry> getFerries() {
         return ferries;
     }
 
-    public static List<Vehicle> getVehicles() {
-        return vehicles;
+    public void setSimulatedDuration(long simulatedDuration) {
+        this.simulatedDuration = simulatedDuration;
     }
 
-    public static Map<Integer, Dock> getDocks() {
-        return docks;
+    // Exports frames of every capture while running, must be called after setup
+    public void setFrameExporter(FrameExporter frameExporter) {
+        this.frameExporter = frameExporter;
+        context.setFrameExporter(frameExporter);
     }
 
     public VehicleSpawner getVehicleSpawner() {
@@ -128,18 +155,48 @@ public class Simulation implements Runnable {
     }
 
     private void spawnFerries() {
+        if (tickEngine != null) {
+            tickEngine.start();
+            return;
+        }
+
         for (Ferry ferry : ferries) {
-            new Thread(ferry).start();
+            entityExecutor.execute(ferry);
+        }
+    }
+
+    // One thread per vehicle and ferry, either a platform thread or a virtual one
+    private static ExecutorService createEntityExecutor(ExecutionMode executionMode) {
+        if (executionMode == ExecutionMode.VIRTUAL_THREADS) {
+            return Executors.newVirtualThreadPerTaskExecutor();
         }
+        return Executors.newThreadPerTaskExecutor(Thread.ofPlatform().factory());
     }
 
     @Override
     public void run() {
+        if (eventEngine != null) {
+            // The event engine doesn't wait for the wall clock, the whole simulated duration is run at once
+            if (frameExporter != null) {
+                eventEngine.setFrameCapture(frameExporter.getInterval(), context::captureSnapshot);
+            }
+            eventEngine.run(simulatedDuration);
+            context.captureSnapshot();
+            if (context.isLogging()) {
+                context.getStatistics().printSummary();
+            }
+            return;
+        }
+
         spawnFerries();
         vehicleSpawner.startSpawning();
         while (simulationRunning) {
             try {
-                Thread.sleep(100);
+                // Entity threads have no common step, so their state is sampled for the renderer from here
+                if (tickEngine == null) {
+                    context.captureSnapshot();
+                }
+                Thread.sleep(SNAPSHOT_INTERVAL);
             } catch (InterruptedException e) {
                 e.printStackTrace();
             }
@@ -147,6 +204,14 @@ public class Simulation implements Runnable {
     }
 
     public void stop() {
+        if (tickEngine != null) {
+            tickEngine.stop();
+        }
+
+        if (eventEngine != null) {
+            eventEngine.stop();
+        }
+
         if (vehicleSpawner != null) {
             vehicleSpawner.stopAllVehiclesAndSpawning();
         }
@@ -159,13 +224,17 @@ public class Simulation implements Runnable {
             ferries.clear();
         }
 
-        simulationRunning = false;
-    }
+        // Entities waiting on a dock would never see that they were stopped
+        if (leftDock != null) {
+            leftDock.reset();
+            rightDock.reset();
+        }
 
-    public static void removeVehicle(Vehicle vehicle) {
-        synchronized (vehicles) {
-            vehicles.remove(vehicle);
-            System.out.println("Vehicle removed. Current vehicle count: " + vehicles.size());
+        // Entities finish on their own once stopped, so there is no need to interrupt them
+        if (entityExecutor != null) {
+            entityExecutor.shutdown();
         }
+
+        simulationRunning = false;
     }
 }
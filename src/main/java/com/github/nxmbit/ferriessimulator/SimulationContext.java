@@ -0,0 +1,112 @@
+package com.github.nxmbit.ferriessimulator;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/*
+   Everything a single simulation run shares between its entities: the grid,
+   the vehicles, the docks, the clock, the statistics, the random number
+   generator, and the buffers the simulation publishes its state to the
+   renderer through. Vehicles, ferries and the spawner get it from their simulation
+   instead of reaching into static state, so any number of simulations can run
+   side by side in one JVM.
+*/
+public class SimulationContext {
+    private final SimulationGrid grid;
+    private final VehicleStore vehicles;
+    private final Map<Integer, Dock> docks;
+    private final SimClock clock;
+    private final SimulationStatistics statistics;
+    private final Random random;
+    private final FerryUpdateBuffer ferryUpdates;
+    private final WorldSnapshotBuffer snapshots;
+    private final boolean logging;
+    private volatile FrameExporter frameExporter; // null unless frames are exported
+
+    public SimulationContext(SimulationGrid grid, SimClock clock, Random random, int maxFerries, int maxVehicles,
+                             boolean logging) {
+        this.grid = grid;
+        // Grown by the spawner if the limit is raised while running
+        this.vehicles = new VehicleStore(maxVehicles);
+        this.docks = new HashMap<>();
+        this.clock = clock;
+        this.statistics = new SimulationStatistics(clock);
+        this.random = random;
+        this.ferryUpdates = new FerryUpdateBuffer(maxFerries);
+        this.snapshots = new WorldSnapshotBuffer(grid.getWidth(), grid.getHeight(), maxFerries);
+        this.logging = logging;
+    }
+
+    public SimulationGrid getGrid() {
+        return grid;
+    }
+
+    public VehicleStore getVehicles() {
+        return vehicles;
+    }
+
+    public Map<Integer, Dock> getDocks() {
+        return docks;
+    }
+
+    public void addDock(int dockId, Dock dock) {
+        docks.put(dockId, dock);
+    }
+
+    // The dock on the other side of the river
+    public Dock getOppositeDock(Dock dock) {
+        return dock == docks.get(1) ? docks.get(2) : docks.get(1);
+    }
+
+    public SimClock getClock() {
+        return clock;
+    }
+
+    public SimulationStatistics getStatistics() {
+        return statistics;
+    }
+
+    public Random getRandom() {
+        return random;
+    }
+
+    public FerryUpdateBuffer getFerryUpdates() {
+        return ferryUpdates;
+    }
+
+    public WorldSnapshotBuffer getSnapshots() {
+        return snapshots;
+    }
+
+    // Publishes the current state for the renderer, only ever called by the thread driving the simulation
+    public void captureSnapshot() {
+        snapshots.capture(grid, vehicles, ferryUpdates, docks, clock.currentTimeMillis());
+        FrameExporter exporter = frameExporter;
+        if (exporter != null) {
+            exporter.captured(snapshots);
+        }
+    }
+
+    // Every later capture is offered to the exporter on the capturing thread
+    public void setFrameExporter(FrameExporter frameExporter) {
+        this.frameExporter = frameExporter;
+    }
+
+    public void removeVehicle(Vehicle vehicle) {
+        vehicles.remove(vehicle.getId());
+        statistics.vehicleDelivered(vehicle);
+        log("Vehicle removed. Current vehicle count: " + vehicles.size());
+    }
+
+    public boolean isLogging() {
+        return logging;
+    }
+
+    // Console output of the vehicles, ferries and spawner, dropped when the logging setting is off
+    public void log(String message) {
+        if (logging) {
+            System.out.println(message);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.github.nxmbit.ferriessimulator;
+
+/*
+   Headless model of the map that owns all simulation state of the grid:
+   the original tile type of every cell (as TileType ordinals) and the
+   vehicle occupancy. A cell is of type VEHICLE exactly when it's claimed in
+   the occupancy index, otherwise it has its original type. It has no JavaFX
+   dependency, Tile nodes only render it.
+*/
+public class SimulationGrid {
+    private static final TileType[] TILE_TYPES = TileType.values();
+
+    private final int width;
+    private final int height;
+    private final byte[] originalTypes;
+    private final OccupancyIndex occupancy;
+
+    public SimulationGrid(TileType[][] originalTileTypes) {
+        this.width = originalTileTypes.length;
+        this.height = originalTileTypes[0].length;
+        this.originalTypes = new byte[width * height];
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                originalTypes[index(x, y)] = (byte) originalTileTypes[x][y].ordinal();
+            }
+        }
+        this.occupancy = new OccupancyIndex(width, height);
+    }
+
+    // Shares the original types of the map, which never change, so a new grid only allocates the occupancy
+    public SimulationGrid(MapModel map) {
+        this.width = map.getGridWidth();
+        this.height = map.getGridHeight();
+        this.originalTypes = map.getOriginalTypes();
+        this.occupancy = new OccupancyIndex(width, height);
+    }
+
+    public int index(int x, int y) {
+        return y * width + x;
+    }
+
+    public boolean isInside(int x, int y) {
+        return x >= 0 && x < width && y >= 0 && y < height;
+    }
+
+    public TileType getType(int x, int y) {
+        if (occupancy.get(x, y) != OccupancyIndex.EMPTY) {
+            return TileType.VEHICLE;
+        }
+        return getOriginalType(x, y);
+    }
+
+    public TileType getOriginalType(int x, int y) {
+        return TILE_TYPES[originalTypes[index(x, y)]];
+    }
+
+    public OccupancyIndex getOccupancy() {
+        return occupancy;
+    }
+
+    // Cells whose type or vehicle changed since the renderer last drained them
+    public DirtyCellSet getDirtyCells() {
+        return occupancy.getDirtyCells();
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+}
@@ -0,0 +1,160 @@
+package com.github.nxmbit.ferriessimulator;
+
+import org.json.JSONObject;
+
+/*
+   Collects throughput and waiting time figures of a single run. All times
+   are simulated time taken from the SimClock of the simulation, so the
+   figures are comparable between modes and time scales.
+*/
+public class SimulationStatistics {
+    private final SimClock clock;
+    private final long startTime;
+
+    private long vehiclesSpawned;
+    private long vehiclesBoarded;
+    private long vehiclesDelivered;
+    private long totalWaitTime;
+    private long maxWaitTime;
+    private long totalTripTime;
+    private long ferryDepartures;
+    private long ferryArrivals;
+    private long vehiclesCarried;
+    private long lastProgressTime; // last boarding or delivery
+    private long stallTime;
+
+    public SimulationStatistics(SimClock clock) {
+        this.clock = clock;
+        this.startTime = clock.currentTimeMillis();
+        this.lastProgressTime = startTime;
+        this.stallTime = -1;
+    }
+
+    public long now() {
+        return clock.currentTimeMillis();
+    }
+
+    public synchronized void vehicleSpawned(Vehicle vehicle) {
+        vehicle.setSpawnTime(now());
+        vehiclesSpawned++;
+    }
+
+    // Waiting time is everything from the spawn up to getting on a ferry
+    public synchronized void vehicleBoarded(Vehicle vehicle) {
+        long waitTime = now() - vehicle.getSpawnTime();
+        vehiclesBoarded++;
+        totalWaitTime += waitTime;
+        maxWaitTime = Math.max(maxWaitTime, waitTime);
+        lastProgressTime = now();
+    }
+
+    public synchronized void vehicleDelivered(Vehicle vehicle) {
+        vehiclesDelivered++;
+        totalTripTime += now() - vehicle.getSpawnTime();
+        lastProgressTime = now();
+    }
+
+    public synchronized void ferryDeparted(int vehiclesOnBoard) {
+        ferryDepartures++;
+        vehiclesCarried += vehiclesOnBoard;
+    }
+
+    public synchronized void ferryArrived() {
+        ferryArrivals++;
+    }
+
+    public synchronized long getTimeSinceProgress() {
+        return now() - lastProgressTime;
+    }
+
+    // Marks the run as stuck since its last progress, its figures don't describe the configuration and must not be used
+    public synchronized void runStalled() {
+        stallTime = lastProgressTime;
+    }
+
+    public synchronized boolean isStalled() {
+        return stallTime >= 0;
+    }
+
+    public synchronized long getStallTime() {
+        return stallTime - startTime;
+    }
+
+    public long getElapsedTime() {
+        return now() - startTime;
+    }
+
+    public synchronized long getVehiclesSpawned() {
+        return vehiclesSpawned;
+    }
+
+    public synchronized long getVehiclesBoarded() {
+        return vehiclesBoarded;
+    }
+
+    public synchronized long getVehiclesDelivered() {
+        return vehiclesDelivered;
+    }
+
+    public synchronized long getFerryDepartures() {
+        return ferryDepartures;
+    }
+
+    public synchronized long getFerryArrivals() {
+        return ferryArrivals;
+    }
+
+    public synchronized double getAverageWaitTime() {
+        return vehiclesBoarded == 0 ? 0 : (double) totalWaitTime / vehiclesBoarded;
+    }
+
+    public synchronized long getMaxWaitTime() {
+        return maxWaitTime;
+    }
+
+    public synchronized double getAverageTripTime() {
+        return vehiclesDelivered == 0 ? 0 : (double) totalTripTime / vehiclesDelivered;
+    }
+
+    public synchronized double getAverageFerryLoad() {
+        return ferryDepartures == 0 ? 0 : (double) vehiclesCarried / ferryDepartures;
+    }
+
+    // Delivered vehicles per simulated hour
+    public double getThroughput() {
+        long elapsed = getElapsedTime();
+        return elapsed <= 0 ? 0 : getVehiclesDelivered() * 3_600_000.0 / elapsed;
+    }
+
+    // Machine-readable figures of the run, times in milliseconds of simulated time
+    public JSONObject toJson() {
+        JSONObject json = new JSONObject();
+        json.put("simulatedTime", getElapsedTime());
+        json.put("vehiclesSpawned", getVehiclesSpawned());
+        json.put("vehiclesBoarded", getVehiclesBoarded());
+        json.put("vehiclesDelivered", getVehiclesDelivered());
+        json.put("throughput", getThroughput());
+        json.put("averageWaitTime", getAverageWaitTime());
+        json.put("maxWaitTime", getMaxWaitTime());
+        json.put("averageTripTime", getAverageTripTime());
+        json.put("ferryDepartures", getFerryDepartures());
+        json.put("averageFerryLoad", getAverageFerryLoad());
+        return json;
+    }
+
+    public void printSummary() {
+        if (isStalled()) {
+            System.out.println("Stalled after " + String.format("%.2f", getStallTime() / 3_600_000.0)
+                    + " h, the figures below are not valid");
+        }
+        System.out.println("Simulated time: " + String.format("%.2f", getElapsedTime() / 3_600_000.0) + " h");
+        System.out.println("Vehicles spawned: " + getVehiclesSpawned() + ", boarded: " + getVehiclesBoarded()
+                + ", delivered: " + getVehiclesDelivered());
+        System.out.println("Throughput: " + String.format("%.1f", getThroughput()) + " vehicles/h");
+        System.out.println("Average wait time: " + String.format("%.1f", getAverageWaitTime() / 1000) + " s, max: "
+                + getMaxWaitTime() / 1000 + " s");
+        System.out.println("Average trip time: " + String.format("%.1f", getAverageTripTime() / 1000) + " s");
+        System.out.println("Ferry departures: " + getFerryDepartures() + ", arrivals: " + getFerryArrivals()
+                + ", average load: " + String.format("%.2f", getAverageFerryLoad()));
+    }
+}
@@ -0,0 +1,113 @@
+package com.github.nxmbit.ferriessimulator;
+
+import javafx.scene.SnapshotParameters;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+   The cells that never change (water, beach, grass, edges and dividers)
+   rasterized once into a single image at the current tile size, so both
+   renderers draw them with one image instead of a node or a paint per cell.
+   Vehicles never enter these cells, so the images only have to be rebuilt
+   when the tile size or the grid visibility changes. Every other cell is
+   left transparent. Zoomed in, the image is taken from a level rasterized
+   at the tile size times the zoom rounded up to a power of two, so a zoom
+   level between two powers of two is scaled down from the larger one.
+   Levels are kept until invalidated. When zoomed into a large map the level
+   would exceed MAX_IMAGE_SIZE, renderers then paint the visible static
+   cells themselves. Must only be used on the FX thread.
+*/
+public class StaticLayer {
+    private static final double MAX_IMAGE_SIZE = 4096; // pixels per side, stays below the texture size limit
+    // Set of tile types that are static and should not be redrawn
+    private static final EnumSet<TileType> STATIC_TILE_TYPES = EnumSet.of(
+            TileType.WATER,
+            TileType.BEACH,
+            TileType.GRASS,
+            TileType.ROAD_DIVIDER,
+            TileType.ROAD_EDGE_LEFT,
+            TileType.ROAD_EDGE_RIGHT,
+            TileType.DOCK_DIVIDER_CROSS_LEFT,
+            TileType.DOCK_DIVIDER_CROSS_RIGHT,
+            TileType.DOCK_DIVIDER_HORIZONTAL,
+            TileType.DOCK_DIVIDER_VERTICAL,
+            TileType.DOCK_EDGE_BOTTOM,
+            TileType.DOCK_EDGE_BOTTOM_CONN_LEFT,
+            TileType.DOCK_EDGE_BOTTOM_CONN_RIGHT,
+            TileType.DOCK_EDGE_CROSS_LEFT,
+            TileType.DOCK_EDGE_CROSS_RIGHT,
+            TileType.DOCK_EDGE_LEFT,
+            TileType.DOCK_EDGE_RIGHT,
+            TileType.DOCK_EDGE_TOP
+    );
+
+    private final SimulationGrid grid;
+    private final Map<Double, WritableImage> levels; // by cell size, all at levelsTileSize and levelsGridVisible
+    private double levelsTileSize;
+    private boolean levelsGridVisible;
+
+    public StaticLayer(SimulationGrid grid) {
+        this.grid = grid;
+        this.levels = new HashMap<>();
+    }
+
+    public static boolean isStatic(TileType type) {
+        return STATIC_TILE_TYPES.contains(type);
+    }
+
+    public boolean isStatic(int x, int y) {
+        return isStatic(grid.getOriginalType(x, y));
+    }
+
+    public WritableImage getImage(double tileSize, boolean gridVisible) {
+        return getImage(tileSize, Viewport.MIN_ZOOM, gridVisible);
+    }
+
+    // The cached level for the zoom, cells in it are getCellSize(tileSize, zoom) pixels
+    public WritableImage getImage(double tileSize, double zoom, boolean gridVisible) {
+        double cellSize = getCellSize(tileSize, zoom);
+        if (grid.getWidth() * cellSize > MAX_IMAGE_SIZE || grid.getHeight() * cellSize > MAX_IMAGE_SIZE) {
+            return null;
+        }
+        if (tileSize != levelsTileSize || gridVisible != levelsGridVisible) {
+            levels.clear();
+            levelsTileSize = tileSize;
+            levelsGridVisible = gridVisible;
+        }
+        return levels.computeIfAbsent(cellSize, size -> rasterize(size, gridVisible));
+    }
+
+    // The tile size times the zoom rounded up to a power of two
+    public static double getCellSize(double tileSize, double zoom) {
+        return tileSize * Math.pow(2, Math.max(0, Math.ceil(Math.log(zoom) / Math.log(2) - 1e-9)));
+    }
+
+    // Rasterized again on the next getImage, for when the tile images finished loading
+    public void invalidate() {
+        levels.clear();
+    }
+
+    private WritableImage rasterize(double tileSize, boolean gridVisible) {
+        Canvas canvas = new Canvas(Math.ceil(grid.getWidth() * tileSize), Math.ceil(grid.getHeight() * tileSize));
+        GraphicsContext gc = canvas.getGraphicsContext2D();
+        gc.setImageSmoothing(false);
+        for (int x = 0; x < grid.getWidth(); x++) {
+            for (int y = 0; y < grid.getHeight(); y++) {
+                TileType type = grid.getOriginalType(x, y);
+                if (isStatic(type)) {
+                    CanvasRenderer.paintTile(gc, type, x, y, tileSize, gridVisible);
+                }
+            }
+        }
+
+        SnapshotParameters parameters = new SnapshotParameters();
+        parameters.setFill(Color.TRANSPARENT);
+        return canvas.snapshot(parameters, null);
+    }
+}
@@ -0,0 +1,75 @@
+package com.github.nxmbit.ferriessimulator;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/*
+   Advances every vehicle and ferry from a single scheduler thread in fixed
+   simulation steps, instead of giving each entity its own sleeping thread.
+   Each tick hands the simulated time passed since the previous tick to every
+   entity, which turns its speed into a movement budget for that step. Ticks
+   come at a fixed wall-clock rate, so a higher time scale means longer steps.
+   After every tick the state is captured for the renderer, which makes each
+   rendered frame an exact tick boundary.
+*/
+public class TickEngine {
+    private final SimulationContext context;
+    private final VehicleStore vehicles;
+    private final List<Ferry> ferries;
+    private final long tickInterval;
+    private final SimClock clock;
+    private long lastTickTime;
+    private ScheduledExecutorService executorService;
+
+    public TickEngine(SimulationContext context, List<Ferry> ferries, long tickInterval) {
+        this.context = context;
+        this.vehicles = context.getVehicles();
+        this.ferries = ferries;
+        this.tickInterval = tickInterval;
+        this.clock = context.getClock();
+    }
+
+    public void start() {
+        lastTickTime = clock.currentTimeMillis();
+        executorService = Executors.newSingleThreadScheduledExecutor();
+        executorService.scheduleAtFixedRate(this::tick, tickInterval, tickInterval, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        if (executorService != null) {
+            executorService.shutdownNow();
+        }
+    }
+
+    private void tick() {
+        // An exception escaping a scheduled task would silently cancel all further ticks
+        try {
+            long now = clock.currentTimeMillis();
+            long elapsed = now - lastTickTime;
+            lastTickTime = now;
+
+            Ferry[] ferrySnapshot;
+            synchronized (ferries) {
+                ferrySnapshot = ferries.toArray(new Ferry[0]);
+            }
+            for (Ferry ferry : ferrySnapshot) {
+                ferry.tick(elapsed);
+            }
+
+            // Vehicles despawn (and free their slot) while being ticked, empty slots are skipped
+            int slotLimit = vehicles.getSlotLimit();
+            for (int id = 0; id < slotLimit; id++) {
+                Vehicle vehicle = vehicles.get(id);
+                if (vehicle != null) {
+                    vehicle.tick(elapsed);
+                }
+            }
+
+            context.captureSnapshot();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+}
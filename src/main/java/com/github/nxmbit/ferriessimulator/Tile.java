@@ -1,14 +1,15 @@
 package com.github.nxmbit.ferriessimulator;
 
 import javafx.scene.paint.Color;
+import javafx.scene.paint.Paint;
 import javafx.scene.shape.Rectangle;
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
+// View of a single SimulationGrid cell, the simulation itself never touches it
 public class Tile extends Rectangle {
+    // Indexed by the color index a vehicle is spawned with
+    public static final Color[] VEHICLE_COLORS = {Color.RED, Color.GREEN, Color.BLUE, Color.YELLOW, Color.ORANGE, Color.PURPLE};
+
     private TileType type;
-    private final Lock lock;
     private int gridX;
     private int gridY;
     private boolean strokeVisibility;
@@ -18,14 +19,9 @@ public class Tile extends Rectangle {
         this.gridX = gridX;
         this.gridY = gridY;
         this.type = type;
-        this.lock = new ReentrantLock();
         setFillBasedOnType();
     }
 
-    public Lock getLock() {
-        return lock;
-    }
-
     public void setStrokeVisibility(boolean visibility) {
         strokeVisibility = visibility;
         setFillBasedOnType();
@@ -56,98 +52,78 @@ public class Tile extends Rectangle {
         return tile == TileType.ROAD || tile == TileType.ROAD_DIVIDER || tile == TileType.ROAD_SPAWN_DOCK_1 || tile == TileType.ROAD_SPAWN_DOCK_2 || tile == TileType.ROAD_QUIT_DOCK_1 || tile == TileType.ROAD_QUIT_DOCK_2;
     }
 
-    private void setFillBasedOnType() {
-        if (strokeVisibility) {
-            setStroke(Color.BLACK);
-            setStrokeWidth(1);
-        } else {
-            setStroke(null);
-        }
-
-        setSmooth(false);
+    // Shared with the canvas renderer, image patterns are drawn there as their image
+    public static Paint getPaint(TileType type) {
         switch (type) {
             case WATER:
-                setFill(Color.BLUE);
-                break;
+                return Color.BLUE;
             case ROAD:
             case ROAD_SPAWN_DOCK_1:
             case ROAD_SPAWN_DOCK_2:
             case ROAD_QUIT_DOCK_1:
             case ROAD_QUIT_DOCK_2:
-                setFill(Color.GRAY);
-                break;
+                return Color.GRAY;
             case ROAD_EDGE_LEFT:
-                setFill(ImageLoader.getRoadEdgeLeftImagePattern());
-                break;
+                return ImageLoader.getPaint(type);
             case ROAD_EDGE_RIGHT:
-                setFill(ImageLoader.getRoadEdgeRightImagePattern());
-                break;
+                return ImageLoader.getPaint(type);
             case ROAD_DIVIDER:
-                setFill(ImageLoader.getRoadDividerImagePattern());
-                break;
+                return ImageLoader.getPaint(type);
             case DOCK:
             case DOCK_STRAIGHT_DOWN:
             case DOCK_TURN_LEFT:
             case DOCK_TURN_RIGHT:
-                setFill(Color.DARKGRAY);
-                break;
+                return Color.DARKGRAY;
             case DOCK_DIVIDER_HORIZONTAL:
-                setFill(ImageLoader.getDockDividerHorizontalImagePattern());
-                break;
+                return ImageLoader.getPaint(type);
             case DOCK_DIVIDER_VERTICAL:
-                setFill(ImageLoader.getDockDividerVerticalImagePattern());
-                break;
+                return ImageLoader.getPaint(type);
             case DOCK_DIVIDER_CROSS_RIGHT:
-                setFill(ImageLoader.getDockDividerCrossRightImagePattern());
-                break;
+                return ImageLoader.getPaint(type);
             case DOCK_DIVIDER_CROSS_LEFT:
-                setFill(ImageLoader.getDockDividerCrossLeftImagePattern());
-                break;
+                return ImageLoader.getPaint(type);
             case DOCK_EDGE_LEFT:
-                setFill(ImageLoader.getDockEdgeLeftImagePattern());
-                break;
+                return ImageLoader.getPaint(type);
             case DOCK_EDGE_RIGHT:
-                setFill(ImageLoader.getDockEdgeRightImagePattern());
-                break;
+                return ImageLoader.getPaint(type);
             case DOCK_EDGE_TOP:
-                setFill(ImageLoader.getDockEdgeTopImagePattern());
-                break;
+                return ImageLoader.getPaint(type);
             case DOCK_EDGE_BOTTOM:
-                setFill(ImageLoader.getDockEdgeBottomImagePattern());
-                break;
+                return ImageLoader.getPaint(type);
             case DOCK_EDGE_CROSS_RIGHT:
-                setFill(ImageLoader.getDockEdgeCrossRightImagePattern());
-                break;
+                return ImageLoader.getPaint(type);
             case DOCK_EDGE_CROSS_LEFT:
-                setFill(ImageLoader.getDockEdgeCrossLeftImagePattern());
-                break;
+                return ImageLoader.getPaint(type);
             case DOCK_EDGE_BOTTOM_CONN_RIGHT:
-                setFill(ImageLoader.getDockEdgeBottomConnRightImagePattern());
-                break;
+                return ImageLoader.getPaint(type);
             case DOCK_EDGE_BOTTOM_CONN_LEFT:
-                setFill(ImageLoader.getDockEdgeBottomConnLeftImagePattern());
-                break;
+                return ImageLoader.getPaint(type);
             case DOCK_CRITICAL_SECTION:
-                setFill(Color.BLACK);
-                break;
+                return Color.BLACK;
             case DOCK_QUEUE:
-                setFill(Color.DIMGRAY);
-                break;
+                return Color.DIMGRAY;
             case GRASS:
-                setFill(Color.GREEN);
-                break;
+                return Color.GREEN;
             case BEACH:
-                setFill(Color.SANDYBROWN);
-                break;
+                return Color.SANDYBROWN;
             case VEHICLE:
-                setFill(Color.CYAN);
-                break;
+                return Color.CYAN;
             case FERRY:
-                setFill(Color.RED);
-                break;
+                return Color.RED;
             default:
-                setFill(Color.WHITE);
-                break;
+                return Color.WHITE;
         }
     }
+
+    private void setFillBasedOnType() {
+        if (strokeVisibility) {
+            setStroke(Color.BLACK);
+            setStrokeWidth(1);
+        } else {
+            setStroke(null);
+        }
+
+        setSmooth(false);
+        setFill(getPaint(type));
+    }
 }
@@ -0,0 +1,120 @@
+package com.github.nxmbit.ferriessimulator;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+
+/*
+   The Tile nodes of the node renderer, created one CHUNK_SIZE x CHUNK_SIZE
+   chunk at a time when a cell of the chunk is first needed instead of one
+   node per cell of the whole map up front. Static cells get no node, they
+   are drawn by the static layer. The tile types come from the MapModel,
+   which keeps a byte per cell.
+
+   Loaded chunks are kept in the order they were last visible. Once more than
+   MAX_LOADED_CHUNKS are loaded, the ones that have been out of view the
+   longest are dropped. The vehicles shown on a tile are only copied into it
+   from the rendered colors while it's visible, so a dropped chunk holds
+   nothing that isn't created again when it comes back into view.
+*/
+public class TileChunks {
+    public static final int CHUNK_SIZE = 32;
+    private static final int MAX_LOADED_CHUNKS = 64;
+
+    private final MapModel map;
+    private final int chunkColumns;
+    private final Tile[][] chunks; // by chunk index, null while not loaded
+    private final LinkedHashSet<Integer> loadedChunks; // least recently visible first
+    private double tileSize;
+    private boolean gridVisible;
+
+    public TileChunks(MapModel map, double tileSize, boolean gridVisible) {
+        this.map = map;
+        this.chunkColumns = (map.getGridWidth() + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        int chunkRows = (map.getGridHeight() + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        this.chunks = new Tile[chunkColumns * chunkRows][];
+        this.loadedChunks = new LinkedHashSet<>();
+        this.tileSize = tileSize;
+        this.gridVisible = gridVisible;
+    }
+
+    // The tile of the cell, loading its chunk if needed, or null for static cells
+    public Tile get(int x, int y) {
+        int chunk = (y / CHUNK_SIZE) * chunkColumns + x / CHUNK_SIZE;
+        Tile[] tiles = chunks[chunk];
+        if (tiles == null) {
+            tiles = load(chunk);
+        }
+        return tiles[(y % CHUNK_SIZE) * CHUNK_SIZE + x % CHUNK_SIZE];
+    }
+
+    private Tile[] load(int chunk) {
+        int minX = (chunk % chunkColumns) * CHUNK_SIZE;
+        int minY = (chunk / chunkColumns) * CHUNK_SIZE;
+        Tile[] tiles = new Tile[CHUNK_SIZE * CHUNK_SIZE];
+        for (int y = minY; y < Math.min(minY + CHUNK_SIZE, map.getGridHeight()); y++) {
+            for (int x = minX; x < Math.min(minX + CHUNK_SIZE, map.getGridWidth()); x++) {
+                TileType type = map.getOriginalType(x, y);
+                if (StaticLayer.isStatic(type)) {
+                    continue; // part of the static layer image
+                }
+                Tile tile = new Tile(x * tileSize, y * tileSize, tileSize, tileSize, type, x, y);
+                if (gridVisible) {
+                    tile.setStrokeVisibility(true);
+                }
+                tiles[(y - minY) * CHUNK_SIZE + x - minX] = tile;
+            }
+        }
+        chunks[chunk] = tiles;
+        loadedChunks.add(chunk);
+        return tiles;
+    }
+
+    // Marks the chunks in the range as the most recently visible, then drops the oldest others over MAX_LOADED_CHUNKS
+    public void evict(CellRange visible) {
+        for (int chunkY = visible.minY() / CHUNK_SIZE; chunkY <= visible.maxY() / CHUNK_SIZE && visible.minY() <= visible.maxY(); chunkY++) {
+            for (int chunkX = visible.minX() / CHUNK_SIZE; chunkX <= visible.maxX() / CHUNK_SIZE && visible.minX() <= visible.maxX(); chunkX++) {
+                int chunk = chunkY * chunkColumns + chunkX;
+                if (loadedChunks.remove(chunk)) {
+                    loadedChunks.add(chunk);
+                }
+            }
+        }
+
+        Iterator<Integer> iterator = loadedChunks.iterator();
+        while (loadedChunks.size() > MAX_LOADED_CHUNKS && iterator.hasNext()) {
+            int chunk = iterator.next();
+            int x = (chunk % chunkColumns) * CHUNK_SIZE;
+            int y = (chunk / chunkColumns) * CHUNK_SIZE;
+            if (x <= visible.maxX() && x + CHUNK_SIZE > visible.minX() && y <= visible.maxY() && y + CHUNK_SIZE > visible.minY()) {
+                break; // the visible chunks were moved to the end, so only visible ones are left
+            }
+            iterator.remove();
+            chunks[chunk] = null;
+        }
+    }
+
+    public void setTileSize(double tileSize) {
+        this.tileSize = tileSize;
+        for (int chunk : loadedChunks) {
+            for (Tile tile : chunks[chunk]) {
+                if (tile != null) {
+                    tile.setWidth(tileSize);
+                    tile.setHeight(tileSize);
+                    tile.setX(tile.getGridX() * tileSize);
+                    tile.setY(tile.getGridY() * tileSize);
+                }
+            }
+        }
+    }
+
+    public void setGridVisible(boolean gridVisible) {
+        this.gridVisible = gridVisible;
+        for (int chunk : loadedChunks) {
+            for (Tile tile : chunks[chunk]) {
+                if (tile != null) {
+                    tile.setStrokeVisibility(gridVisible);
+                }
+            }
+        }
+    }
+}
@@ -1,9 +1,9 @@
 package com.github.nxmbit.ferriessimulator;
 
-import javafx.scene.paint.Color;
-import java.util.concurrent.locks.Lock;
-
 public class Vehicle implements Runnable {
+    static final long START_DELAY = 1000;
+
+    private int id;
     private double speed;
     private final double maxSpeed;
     private Dock dock;
@@ -11,36 +11,50 @@ public class Vehicle implements Runnable {
     private int x;
     private int prevX;
     private int prevY;
-    private Tile[][] grid;
-    private TileType[][] originalTileTypes;
-    private final Color color;
+    private final SimulationGrid grid;
+    private final OccupancyIndex occupancy;
     private VehicleState state;
     private VehicleState previousState;
     private VehicleState travelState;
     private long threadSleepBasedOnSpeed;
     private boolean dockChanged;
+    private final ExecutionMode executionMode;
+    private final SimulationContext context;
+    private long startDelay;
+    private double movementBudget;
+    private long spawnTime;
+    private boolean waitingForCriticalSection; // the last try to enter the critical section failed
 
     private boolean running;
 
-    private Tile despawnPoint;
+    private final GridPoint despawnPoint;
 
-    public Vehicle(double speed, Color color, Dock dock, Tile[][] grid, Tile spawn, Tile despawn, TileType[][] originalTileTypes) {
+    public Vehicle(double speed, Dock dock, SimulationContext context, GridPoint spawn, GridPoint despawn, ExecutionMode executionMode) {
         this.despawnPoint = despawn;
         this.speed = this.maxSpeed = speed;
-        this.color = color;
         this.dock = dock;
-        this.y = this.prevY = spawn.getGridY();
-        this.x = this.prevX = spawn.getGridX();
-        this.grid = grid;
-        this.originalTileTypes = originalTileTypes;
-        grid[x][y].setType(TileType.VEHICLE);
-        grid[x][y].setFill(color);
+        this.y = this.prevY = spawn.y();
+        this.x = this.prevX = spawn.x();
+        this.context = context;
+        this.grid = context.getGrid();
+        this.occupancy = grid.getOccupancy();
         this.state = VehicleState.GOING_STRAIGHT_UP;
         this.travelState = VehicleState.TRAVELLING_TO_DOCK;
         this.running = true;
         this.threadSleepBasedOnSpeed = (long) (1000 / speed);
         this.dockChanged = false;
+        this.executionMode = executionMode;
+        this.startDelay = START_DELAY;
+        this.movementBudget = 0;
+        this.waitingForCriticalSection = false;
+    }
 
+    public int getId() {
+        return id;
+    }
+
+    public void setId(int id) {
+        this.id = id;
     }
 
     public int getX() {
@@ -51,6 +65,10 @@ public class Vehicle implements Runnable {
         return y;
     }
 
+    public Dock getDock() {
+        return dock;
+    }
+
     public void setDock(Dock dock) {
         this.dock = dock;
     }
@@ -59,10 +77,22 @@ public class Vehicle implements Runnable {
         running = false;
     }
 
+    public boolean isRunning() {
+        return running;
+    }
+
+    public long getSpawnTime() {
+        return spawnTime;
+    }
+
+    public void setSpawnTime(long spawnTime) {
+        this.spawnTime = spawnTime;
+    }
+
     @Override
     public void run() {
         try {
-            Thread.sleep(1000);
+            context.getClock().sleep(START_DELAY);
         } catch (InterruptedException e) {
             e.printStackTrace();
         }
@@ -70,167 +100,187 @@ public class Vehicle implements Runnable {
         while (running) {
             try {
                 move();
-                Thread.sleep(threadSleepBasedOnSpeed);
+                publish();
+                context.getClock().sleep(threadSleepBasedOnSpeed);
             } catch (InterruptedException e) {
                 e.printStackTrace();
             }
         }
     }
 
+    // Advances the vehicle by one engine step, speed (tiles per second) is spent as a movement budget
+    public void tick(long elapsedMillis) throws InterruptedException {
+        if (!running) {
+            return;
+        }
+
+        if (startDelay > 0) {
+            startDelay -= elapsedMillis;
+            return;
+        }
+
+        movementBudget += speed * elapsedMillis / 1000.0;
+        while (running && movementBudget >= 1) {
+            movementBudget -= 1;
+            move();
+            publish();
+        }
+    }
+
+    // Advances the vehicle by a single step and returns the time until its next one, used by the discrete-event engine
+    public long step() throws InterruptedException {
+        move();
+        publish();
+        return Math.max(1, (long) (1000 / speed));
+    }
+
+    // Mirrors the speed into the shared store, which is what the vehicles behind read
+    private void publish() {
+        if (running) { // a despawned vehicle's id may already belong to someone else
+            context.getVehicles().updateSpeed(id, speed);
+        }
+    }
+
+    // Holds the vehicle for one step of its own thread, engine-driven vehicles are paced by the engine instead
+    private void pause() throws InterruptedException {
+        if (executionMode.usesEntityThreads()) {
+            context.getClock().sleep(threadSleepBasedOnSpeed);
+        }
+    }
+
     public void move() throws InterruptedException {
-        Lock currentLock = grid[x][y].getLock();
-        currentLock.lock();
-        try {
+        if (isAtDespawnPoint()) {
+            despawn();
+            return;
+        }
 
-            if (isAtDespawnPoint()) {
-                despawn();
+        if (travelState == VehicleState.TRAVELLING_TO_DOCK && isInFrontOfDockEntry()) {
+            if (!enterEnteringQueue()) {
+                return; // If unable to enter dock queue, wait and retry
+            }
+        } else if (travelState == VehicleState.AWAITING_ON_DOCK && isInFrontOfDockTurnLeft()) {
+            // If the vehicle is in front of a left turn, and there is a vehicle left of it, wait
+            if (grid.getType(x - 1, y - 1) == TileType.VEHICLE) {
                 return;
             }
-
-            if (travelState == VehicleState.TRAVELLING_TO_DOCK && isInFrontOfDockEntry()) {
-                if (!enterEnteringQueue()) {
-                    return; // If unable to enter dock queue, wait and retry
-                }
-            } else if (travelState == VehicleState.AWAITING_ON_DOCK && isInFrontOfDockTurnLeft()) {
-                // If the vehicle is in front of a left turn, and there is a vehicle left of it, wait
-                if (grid[x - 1][y - 1].getType() == TileType.VEHICLE) {
-                    return;
-                }
-            } else if (travelState == VehicleState.AWAITING_ON_DOCK && isInFrontOfDockTurnRight()) {
-                // If the vehicle is in front of a right turn, and there is a vehicle right of it, wait
-                if (grid[x + 1][y - 1].getType() == TileType.VEHICLE) {
-                    return;
-                }
-            } else if (travelState == VehicleState.UNLOADED_FROM_FERRY && isInFrontOfRoad()) {
-                exitExitingQueue();
-            } else if (travelState == VehicleState.UNLOADING_FROM_FERRY && isInCriticalSection()) {
-                enterExitingQueue();
-            } else if (travelState == VehicleState.AWAITING_ON_DOCK && isInFrontOfDockQueue()) {
-                exitEnteringQueue();
-                return; // If unable to exit dock queue, wait and retry
-            } else if (travelState == VehicleState.LOADED_ON_FERRY || travelState == VehicleState.LOADING_ON_FERRY) {
-                // Ferry logic will handle these states
+        } else if (travelState == VehicleState.AWAITING_ON_DOCK && isInFrontOfDockTurnRight()) {
+            // If the vehicle is in front of a right turn, and there is a vehicle right of it, wait
+            if (grid.getType(x + 1, y - 1) == TileType.VEHICLE) {
                 return;
             }
-
-            prevX = x;
-            prevY = y;
-
-            Tile nextTile = getNextTile();
-            if (nextTile != null) {
-                if (nextTile.getType() == TileType.DOCK_TURN_LEFT || nextTile.getType() == TileType.DOCK_TURN_RIGHT || nextTile.getType() == TileType.DOCK_STRAIGHT_DOWN) {
-                    previousState = state;
-                    state = VehicleState.APPROACHING_TURN;
-                }
+        } else if (travelState == VehicleState.UNLOADED_FROM_FERRY && isInFrontOfRoad()) {
+            exitExitingQueue();
+        } else if (travelState == VehicleState.UNLOADING_FROM_FERRY && isInCriticalSection()) {
+            if (!enterExitingQueue()) {
+                return; // If unable to leave the ferry, wait and retry
             }
+        } else if (travelState == VehicleState.AWAITING_ON_DOCK && isInFrontOfDockQueue()) {
+            waitingForCriticalSection = !exitEnteringQueue();
+            return; // If unable to exit dock queue, wait and retry
+        } else if (travelState == VehicleState.LOADED_ON_FERRY || travelState == VehicleState.LOADING_ON_FERRY) {
+            // Ferry logic will handle these states
+            return;
+        }
 
-            // Adjust position based on the current state
-            switch (state) {
-                case APPROACHING_TURN:
-                    moveInPreviousDirection(); // Move one step in the previous direction
-                    if (nextTile != null) {
-                        if (nextTile.getType() == TileType.DOCK_TURN_LEFT) {
-                            state = VehicleState.TURNING_LEFT;
-                        } else if (nextTile.getType() == TileType.DOCK_TURN_RIGHT) {
-                            state = VehicleState.TURNING_RIGHT;
-                        } else if (nextTile.getType() == TileType.DOCK_STRAIGHT_DOWN) {
-                            state = VehicleState.GOING_STRAIGHT_DOWN;
-                        }
-                    }
-                    break;
-                case TURNING_LEFT:
-                    moveHorizontal(-1);
-                    break;
-                case TURNING_RIGHT:
-                    moveHorizontal(1);
-                    break;
-                case GOING_STRAIGHT_UP:
-                    moveStraight(-1);
-                    break;
-                case GOING_STRAIGHT_DOWN:
-                    moveStraight(1);
-                    break;
-                default:
-                    break;
-            }
+        prevX = x;
+        prevY = y;
 
-            if (grid[x][y].getType() == TileType.VEHICLE) {
-                return;
+        TileType nextTileType = getNextTileType();
+        if (nextTileType != null) {
+            if (nextTileType == TileType.DOCK_TURN_LEFT || nextTileType == TileType.DOCK_TURN_RIGHT || nextTileType == TileType.DOCK_STRAIGHT_DOWN) {
+                previousState = state;
+                state = VehicleState.APPROACHING_TURN;
             }
+        }
 
-            Lock newLock = grid[x][y].getLock();
-            newLock.lock();
-            try {
-                grid[x][y].setType(TileType.VEHICLE);
-                grid[x][y].setFill(color);
-            } finally {
-                newLock.unlock();
-            }
+        // Adjust position based on the current state
+        switch (state) {
+            case APPROACHING_TURN:
+                moveInPreviousDirection(); // Move one step in the previous direction
+                if (nextTileType != null) {
+                    if (nextTileType == TileType.DOCK_TURN_LEFT) {
+                        state = VehicleState.TURNING_LEFT;
+                    } else if (nextTileType == TileType.DOCK_TURN_RIGHT) {
+                        state = VehicleState.TURNING_RIGHT;
+                    } else if (nextTileType == TileType.DOCK_STRAIGHT_DOWN) {
+                        state = VehicleState.GOING_STRAIGHT_DOWN;
+                    }
+                }
+                break;
+            case TURNING_LEFT:
+                moveHorizontal(-1);
+                break;
+            case TURNING_RIGHT:
+                moveHorizontal(1);
+                break;
+            case GOING_STRAIGHT_UP:
+                moveStraight(-1);
+                break;
+            case GOING_STRAIGHT_DOWN:
+                moveStraight(1);
+                break;
+            default:
+                break;
+        }
 
-            Lock prevLock = grid[prevX][prevY].getLock();
-            prevLock.lock();
-            try {
-                grid[prevX][prevY].setType(originalTileTypes[prevX][prevY]);
-            } finally {
-                prevLock.unlock();
-            }
+        if (x == prevX && y == prevY) {
+            return;
+        }
 
-        } finally {
-            currentLock.unlock();
+        // Claim the new cell with a single CAS, if another vehicle got there first stay put and retry
+        if (!occupancy.tryClaim(x, y, id)) {
+            x = prevX;
+            y = prevY;
+            return;
         }
+        occupancy.vacate(prevX, prevY, id);
     }
 
-    private Tile getNextTile() {
+    private TileType getNextTileType() {
         switch (state) {
             case TURNING_LEFT:
-                return grid[x - 1][y];
+                return grid.getType(x - 1, y);
             case TURNING_RIGHT:
-                return grid[x + 1][y];
+                return grid.getType(x + 1, y);
             case GOING_STRAIGHT_UP:
-                return grid[x][y - 1];
+                return grid.getType(x, y - 1);
             case GOING_STRAIGHT_DOWN:
-                return grid[x][y + 1];
+                return grid.getType(x, y + 1);
             default:
                 return null;
         }
     }
 
     private boolean isAtDespawnPoint() {
-        return x == despawnPoint.getGridX() && y == despawnPoint.getGridY();
+        return x == despawnPoint.x() && y == despawnPoint.y();
     }
 
     private boolean isInFrontOfDockEntry() {
-        Tile nextTile = getNextTile();
-        return nextTile != null && nextTile.getType() == TileType.DOCK;
+        return getNextTileType() == TileType.DOCK;
     }
 
     private boolean isInFrontOfDockQueue() {
-        Tile nextTile = getNextTile();
-        return nextTile != null && nextTile.getType() == TileType.DOCK_QUEUE;
+        return getNextTileType() == TileType.DOCK_QUEUE;
     }
 
     private boolean isInFrontOfCriticalSection() {
-        Tile nextTile = getNextTile();
-        return nextTile != null && nextTile.getType() == TileType.DOCK_CRITICAL_SECTION;
+        return getNextTileType() == TileType.DOCK_CRITICAL_SECTION;
     }
 
     private boolean isInFrontOfDockTurnLeft() {
-        Tile nextTile = getNextTile();
-        return nextTile != null && nextTile.getType() == TileType.DOCK_TURN_LEFT;
+        return getNextTileType() == TileType.DOCK_TURN_LEFT;
     }
 
     private boolean isInFrontOfDockTurnRight() {
-        Tile nextTile = getNextTile();
-        return nextTile != null && nextTile.getType() == TileType.DOCK_TURN_RIGHT;
+        return getNextTileType() == TileType.DOCK_TURN_RIGHT;
     }
 
     private boolean isInFrontOfRoad() {
-        Tile nextTile = getNextTile();
-        return nextTile != null && nextTile.getType() == TileType.ROAD;
+        return getNextTileType() == TileType.ROAD;
     }
 
     private boolean isInCriticalSection() {
-        return originalTileTypes[x][y] == TileType.DOCK_CRITICAL_SECTION;
+        return grid.getOriginalType(x, y) == TileType.DOCK_CRITICAL_SECTION;
     }
 
     private boolean enterEnteringQueue() {
@@ -250,19 +300,23 @@ public class Vehicle implements Runnable {
         changeDock();
         dock.getCriticalSectionLock().lock();
         try {
-            if (dock.canEnterExitingQ()) {
-                x = dock.getCriticalSectionCoordinateX();
-                y = dock.getCriticalSectionCoordinateY();
-                grid[x][y].setType(TileType.VEHICLE);
-                grid[x][y].setFill(color);
-                Thread.sleep(threadSleepBasedOnSpeed);
+            int criticalX = dock.getCriticalSectionCoordinateX();
+            int criticalY = dock.getCriticalSectionCoordinateY();
+            if (dock.canEnterExitingQ() && occupancy.tryClaim(criticalX, criticalY, id)) {
+                pause();
+                int returnX = dock.getCriticalSectionReturnCoordinateX();
+                int returnY = dock.getCriticalSectionReturnCoordinateY();
+                if (!occupancy.tryClaim(returnX, returnY, id)) {
+                    occupancy.vacate(criticalX, criticalY, id);
+                    return false;
+                }
                 dock.enterExitingQ(this);
                 dock.setCriticalSectionVehicle(null);
-                grid[x][y].setType(originalTileTypes[x][y]);
-                x = dock.getCriticalSectionReturnCoordinateX();
-                y = dock.getCriticalSectionReturnCoordinateY();
-                grid[x][y].setType(TileType.VEHICLE);
-                grid[x][y].setFill(color);
+                occupancy.vacate(criticalX, criticalY, id);
+                prevX = criticalX;
+                prevY = criticalY;
+                x = returnX;
+                y = returnY;
                 travelState = VehicleState.UNLOADED_FROM_FERRY;
                 return true;
             }
@@ -273,7 +327,7 @@ public class Vehicle implements Runnable {
     }
 
     public void revertChangesToCriticalSectionWhenBoarding() {
-        grid[dock.getCriticalSectionCoordinateX()][dock.getCriticalSectionCoordinateY()].setType(TileType.DOCK_CRITICAL_SECTION);
+        occupancy.vacate(dock.getCriticalSectionCoordinateX(), dock.getCriticalSectionCoordinateY(), id);
     }
 
     private void exitExitingQueue() {
@@ -282,11 +336,7 @@ public class Vehicle implements Runnable {
 
     private void changeDock() {
         if (dockChanged == false) {
-            if (dock == Simulation.getDocks().get(1)) {
-                dock = Simulation.getDocks().get(2);
-            } else {
-                dock = Simulation.getDocks().get(1);
-            }
+            dock = context.getOppositeDock(dock);
             dockChanged = true;
         }
     }
@@ -294,29 +344,33 @@ public class Vehicle implements Runnable {
     private boolean enterCriticalSectionFromEnteringQueue() throws InterruptedException {
         dock.getCriticalSectionLock().lock();
         try {
-            while (!dock.isFerryAtDock() || grid[dock.getCriticalSectionCoordinateX()][dock.getCriticalSectionCoordinateY()].getType() != TileType.DOCK_CRITICAL_SECTION) {
+            while (!dock.isFerryAtDock() || grid.getType(dock.getCriticalSectionCoordinateX(), dock.getCriticalSectionCoordinateY()) != TileType.DOCK_CRITICAL_SECTION) {
                 return false;
             }
-            try {
-                System.out.println("Vehicle " + this + " waiting for critical section");
-                dock.getCriticalSectionCondition().await();
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                return false;
+            // The ferry polls the critical section on its next step, so engine-driven vehicles must not wait here
+            if (executionMode.usesEntityThreads()) {
+                try {
+                    context.log("Vehicle " + this + " waiting for critical section");
+                    dock.getCriticalSectionCondition().await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
             }
 
             // Przypisz pojazd do sekcji krytycznej
             int criticalX = dock.getCriticalSectionCoordinateX();
             int criticalY = dock.getCriticalSectionCoordinateY();
-            grid[x][y].setType(originalTileTypes[x][y]);
+            if (!occupancy.tryClaim(criticalX, criticalY, id)) {
+                return false;
+            }
+            occupancy.vacate(x, y, id);
             x = criticalX;
             y = criticalY;
-            grid[x][y].setType(TileType.VEHICLE);
-            grid[x][y].setFill(color);
             dock.exitEnteringQ();
             dock.setCriticalSectionVehicle(this); // Zaktualizuj pojazd w sekcji krytycznej
             travelState = VehicleState.LOADING_ON_FERRY;
-            Thread.sleep(threadSleepBasedOnSpeed);
+            pause();
             //dock.signalVehicleToEnterCriticalSection(); // Powiadom kolejny pojazd o możliwości wejścia do sekcji krytycznej
             return true;
         } finally {
@@ -324,6 +378,16 @@ public class Vehicle implements Runnable {
         }
     }
 
+    // Stopped in front of the critical section until a ferry at the dock lets it in
+    public boolean isWaitingForCriticalSection() {
+        return travelState == VehicleState.AWAITING_ON_DOCK && waitingForCriticalSection;
+    }
+
+    // In the critical section waiting to board or already on board, the ferry moves it on from here
+    public boolean isOnFerry() {
+        return travelState == VehicleState.LOADING_ON_FERRY || travelState == VehicleState.LOADED_ON_FERRY;
+    }
+
     public VehicleState getTravelState() {
         return travelState;
     }
@@ -333,25 +397,16 @@ public class Vehicle implements Runnable {
     }
 
     private void moveStraight(int direction) {
-        if ((direction == -1 && y - 1 >= 0) || (direction == 1 && y + 1 < grid[0].length)) {
-            Tile nextTile = grid[x][y + direction];
-            Tile nextNextTile = ((direction == -1 && y - 2 >= 0) || (direction == 1 && y + 2 < grid[0].length)) ? grid[x][y + 2 * direction] : null;
+        if (grid.isInside(x, y + direction)) {
+            boolean hasNextNextTile = grid.isInside(x, y + 2 * direction);
 
-            Lock nextLock = nextTile.getLock();
-            nextLock.lock();
-            try {
-                if (nextTile.getType() == TileType.VEHICLE) {
-                    speed = getAdjustedSpeed(x, y + direction);
-                    return;
-                } else if (nextNextTile != null && nextNextTile.getType() == TileType.VEHICLE) {
-                    speed = getAdjustedSpeed(x, y + 2 * direction);
-                    return;
-                } else {
-                    speed = maxSpeed;
-                    y += direction;
-                }
-            } finally {
-                nextLock.unlock();
+            if (grid.getType(x, y + direction) == TileType.VEHICLE) {
+                speed = getAdjustedSpeed(x, y + direction);
+            } else if (hasNextNextTile && grid.getType(x, y + 2 * direction) == TileType.VEHICLE) {
+                speed = getAdjustedSpeed(x, y + 2 * direction);
+            } else {
+                speed = maxSpeed;
+                y += direction;
             }
         } else {
             speed = maxSpeed;
@@ -360,25 +415,16 @@ public class Vehicle implements Runnable {
     }
 
     private void moveHorizontal(int direction) {
-        if ((direction == -1 && x - 1 >= 0) || (direction == 1 && x + 1 < grid.length)) {
-            Tile nextTile = grid[x + direction][y];
-            Tile nextNextTile = ((direction == -1 && x - 2 >= 0) || (direction == 1 && x + 2 < grid.length)) ? grid[x + 2 * direction][y] : null;
+        if (grid.isInside(x + direction, y)) {
+            boolean hasNextNextTile = grid.isInside(x + 2 * direction, y);
 
-            Lock nextLock = nextTile.getLock();
-            nextLock.lock();
-            try {
-                if (nextTile.getType() == TileType.VEHICLE) {
-                    speed = getAdjustedSpeed(x + direction, y);
-                    return;
-                } else if (nextNextTile != null && nextNextTile.getType() == TileType.VEHICLE) {
-                    speed = getAdjustedSpeed(x + 2 * direction, y);
-                    return;
-                } else {
-                    speed = maxSpeed;
-                    x += direction;
-                }
-            } finally {
-                nextLock.unlock();
+            if (grid.getType(x + direction, y) == TileType.VEHICLE) {
+                speed = getAdjustedSpeed(x + direction, y);
+            } else if (hasNextNextTile && grid.getType(x + 2 * direction, y) == TileType.VEHICLE) {
+                speed = getAdjustedSpeed(x + 2 * direction, y);
+            } else {
+                speed = maxSpeed;
+                x += direction;
             }
         } else {
             speed = maxSpeed;
@@ -405,43 +451,22 @@ public class Vehicle implements Runnable {
         }
     }
 
-    public Tile getTile() {
-        return grid[x][y];
-    }
-
     public long unloadVehiclesWaittime() {
         return threadSleepBasedOnSpeed;
     }
 
     private double getAdjustedSpeed(int x, int y) {
-        Vehicle vehicleAhead = getVehicleAhead(x, y);
-        if (vehicleAhead != null) {
-            return Math.min(speed, vehicleAhead.speed);
+        int vehicleAheadId = occupancy.get(x, y);
+        if (vehicleAheadId != OccupancyIndex.EMPTY) {
+            return Math.min(speed, context.getVehicles().getSpeed(vehicleAheadId));
         }
         return speed;
     }
 
-    private Vehicle getVehicleAhead(int x, int y) {
-        synchronized (Simulation.getVehicles()) {
-            for (Vehicle vehicle : Simulation.getVehicles()) {
-                if (vehicle.getX() == x && vehicle.getY() == y) {
-                    return vehicle;
-                }
-            }
-        }
-        return null;
-    }
-
     private void despawn() {
-        System.out.println("Vehicle despawned at (" + x + ", " + y + ")");
-        Lock lock = grid[x][y].getLock();
-        lock.lock();
-        try {
-            grid[x][y].setType(originalTileTypes[x][y]);
-        } finally {
-            lock.unlock();
-        }
-        Simulation.removeVehicle(this);
+        context.log("Vehicle despawned at (" + x + ", " + y + ")");
+        occupancy.vacate(x, y, id);
         running = false; // Stop the vehicle's thread
+        context.removeVehicle(this);
     }
 }
@@ -1,50 +1,70 @@
 package com.github.nxmbit.ferriessimulator;
 
-import javafx.scene.paint.Color;
-
 import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
 
 public class VehicleSpawner {
-    private Tile[][] grid;
-    private TileType[][] originalTileTypes;
-    private ScheduledExecutorService executorService;
-    private List<Vehicle> vehicles;
+    public static final int VEHICLE_COLOR_COUNT = 6; // size of the palette in Tile.VEHICLE_COLORS
+
+    private final SimulationContext context;
+    private final SimulationGrid grid;
+    private final OccupancyIndex occupancy;
+    private ExecutorService executorService;
+    private VehicleStore vehicles;
+    private final Executor entityExecutor;
     private int maxCars;
     private long spawnInterval;
-    private Map<Integer, Tile> spawnPoints;
-    private Map<Integer, Tile> despawnPoints;
+    private Map<Integer, GridPoint> spawnPoints;
+    private Map<Integer, GridPoint> despawnPoints;
     private Map<Integer, Dock> docks;
     private final Random random;
     private double minSpeed;
     private double maxSpeed;
-    private final Color[] colors = {Color.RED, Color.GREEN, Color.BLUE, Color.YELLOW, Color.ORANGE, Color.PURPLE};
     private double leftDockSpawnProbability;
-
-
-    public VehicleSpawner(Map<Integer, Dock> docks, Tile[][] grid, int maxCars, Map<Integer, Tile> spawnPoints,
-                          Map<Integer, Tile> despawnPoints, TileType[][] originalTileTypes,
-                          long spawnInterval, List<Vehicle> vehicles, double leftDockSpawnProbability,
-                          double minSpeed, double maxSpeed) {
-        this.random = new Random();
-        this.docks = docks;
-        this.grid = grid;
-        this.originalTileTypes = originalTileTypes;
+    private final ExecutionMode executionMode;
+    private final DiscreteEventEngine eventEngine;
+
+    public VehicleSpawner(SimulationContext context, int maxCars, Map<Integer, GridPoint> spawnPoints,
+                          Map<Integer, GridPoint> despawnPoints, long spawnInterval, Executor entityExecutor, double leftDockSpawnProbability,
+                          double minSpeed, double maxSpeed, ExecutionMode executionMode, DiscreteEventEngine eventEngine) {
+        this.context = context;
+        this.random = context.getRandom();
+        this.docks = context.getDocks();
+        this.grid = context.getGrid();
+        this.occupancy = grid.getOccupancy();
         this.maxCars = maxCars;
         this.spawnInterval = spawnInterval;
-        this.vehicles = vehicles;
+        this.vehicles = context.getVehicles();
+        this.entityExecutor = entityExecutor;
         this.spawnPoints = spawnPoints;
         this.despawnPoints = despawnPoints;
-        this.executorService = Executors.newScheduledThreadPool(1);
+        this.executorService = Executors.newSingleThreadExecutor();
         this.leftDockSpawnProbability = leftDockSpawnProbability;
         this.minSpeed = minSpeed;
         this.maxSpeed = maxSpeed;
+        this.executionMode = executionMode;
+        this.eventEngine = eventEngine;
     }
 
     public void startSpawning() {
-        executorService.scheduleAtFixedRate(this::trySpawnVehicle, 0, spawnInterval, TimeUnit.MILLISECONDS);
+        if (eventEngine != null) {
+            return; // Arrivals are events of the discrete-event engine
+        }
+        executorService.execute(this::spawnVehicles);
+    }
+
+    // Sleeps on the simulation clock rather than using a fixed-rate schedule, so the time scale applies to arrivals too
+    private void spawnVehicles() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                trySpawnVehicle();
+                context.getClock().sleep(spawnInterval);
+            }
+        } catch (InterruptedException e) {
+            // Spawning was stopped
+        }
     }
 
     public void setDockSpawnProbability(double leftDockSpawnProbability) {
@@ -60,6 +80,7 @@ public class VehicleSpawner {
     }
 
     public void setMaxCars(int maxCars) {
+        vehicles.ensureCapacity(maxCars);
         this.maxCars = maxCars;
     }
 
@@ -67,87 +88,100 @@ public class VehicleSpawner {
         return random.nextDouble() < leftDockSpawnProbability ? 1 : 2;
     }
 
-    public void trySpawnVehicle() {
-        synchronized (vehicles) {
-            System.out.println("Trying to spawn vehicle. Current vehicle count: " + vehicles.size() + ", Max cars: " + maxCars);
-            if (vehicles.size() < maxCars) {
-                int spawnPointId = getSpawnPointBasedOnProbability(); // Select dock based on probability
-                attemptSpawnVehicle(spawnPointId);
-            }
+    // Spawns are serialized on the spawner, so the count check and the add below can't race
+    public synchronized void trySpawnVehicle() {
+        context.log("Trying to spawn vehicle. Current vehicle count: " + vehicles.size() + ", Max cars: " + maxCars);
+        if (hasRoomForVehicle()) {
+            int spawnPointId = getSpawnPointBasedOnProbability(); // Select dock based on probability
+            attemptSpawnVehicle(spawnPointId);
         }
     }
 
-    public void trySpawnVehicleOnDock(int dockId) {
-        synchronized (vehicles) {
-            System.out.println("Trying to spawn vehicle on dock " + dockId + ". Current vehicle count: " + vehicles.size() + ", Max cars: " + maxCars);
-            if (vehicles.size() < maxCars) {
-                attemptSpawnVehicle(dockId);
-            }
+    public synchronized void trySpawnVehicleOnDock(int dockId) {
+        context.log("Trying to spawn vehicle on dock " + dockId + ". Current vehicle count: " + vehicles.size() + ", Max cars: " + maxCars);
+        if (hasRoomForVehicle()) {
+            attemptSpawnVehicle(dockId);
         }
     }
 
-    public void attemptSpawnVehicle(int spawnPointId) {
-        Tile spawnPoint = spawnPoints.get(spawnPointId);
-        Tile despawnPoint = despawnPoints.get((spawnPointId == 1) ? 2 : 1);
+    private boolean hasRoomForVehicle() {
+        return vehicles.size() < Math.min(maxCars, vehicles.getCapacity());
+    }
+
+    // Only called by the synchronized spawn methods, the spawn point itself is claimed through the occupancy index
+    private void attemptSpawnVehicle(int spawnPointId) {
+        GridPoint spawnPoint = spawnPoints.get(spawnPointId);
+        GridPoint despawnPoint = despawnPoints.get((spawnPointId == 1) ? 2 : 1);
         Dock dock = docks.get(spawnPointId);
 
         if (spawnPoint == null || despawnPoint == null || dock == null) {
             return;
         }
 
-        // Synchronize on the spawn point to avoid concurrent spawns at the same location
-        synchronized (spawnPoint) {
-            // Check if the spawn point is free
-            if (spawnPoint.getType() == TileType.VEHICLE) {
-                return;
-            }
+        // Check if the spawn point is free
+        if (grid.getType(spawnPoint.x(), spawnPoint.y()) == TileType.VEHICLE) {
+            return;
+        }
 
-            // Check if the tile in front of the spawn point is free
-            int frontY = spawnPoint.getGridY() - 1;
-            if (frontY >= 0 && grid[spawnPoint.getGridX()][frontY].getType() == TileType.VEHICLE) {
-                return; // Do not spawn if the space is occupied
-            }
+        // Check if the tile in front of the spawn point is free
+        int frontY = spawnPoint.y() - 1;
+        if (frontY >= 0 && grid.getType(spawnPoint.x(), frontY) == TileType.VEHICLE) {
+            return; // Do not spawn if the space is occupied
+        }
 
-            // Generate a random speed and color for the vehicle
-            double speed = minSpeed + (maxSpeed - minSpeed) * random.nextDouble();
-            Color color = colors[random.nextInt(colors.length)];
+        // Generate a random speed and color for the vehicle
+        double speed = minSpeed + (maxSpeed - minSpeed) * random.nextDouble();
+        int colorIndex = random.nextInt(VEHICLE_COLOR_COUNT);
 
-            // Spawn the vehicle if the space is free
-            Vehicle vehicle = new Vehicle(speed, color, dock, grid, spawnPoint, despawnPoint, originalTileTypes);
-            synchronized (vehicles) {
-                vehicles.add(vehicle);
-            }
+        // Spawn the vehicle if the space is free
+        Vehicle vehicle = new Vehicle(speed, dock, context, spawnPoint, despawnPoint, executionMode);
+        int id = vehicles.add(vehicle, speed, colorIndex);
+        if (!occupancy.tryClaim(spawnPoint.x(), spawnPoint.y(), id)) {
+            vehicles.remove(id); // a vehicle got onto the spawn point after the check above
+            return;
+        }
 
-            spawnPoint.setType(TileType.VEHICLE);
-            spawnPoint.setFill(color);
+        context.getStatistics().vehicleSpawned(vehicle);
 
-            // Log the spawn
-            System.out.println("Vehicle spawned at (" + spawnPoint.getGridX() + ", " + spawnPoint.getGridY() + ") with speed " + speed + " and color " + color);
+        // Log the spawn
+        context.log("Vehicle spawned at (" + spawnPoint.x() + ", " + spawnPoint.y() + ") with speed " + speed + " and color " + colorIndex);
 
-            new Thread(vehicle).start();
+        // Without entity threads the tick engine picks the vehicle up from the store, the event engine has to be told
+        if (executionMode.usesEntityThreads()) {
+            entityExecutor.execute(vehicle);
+        } else if (eventEngine != null) {
+            eventEngine.vehicleSpawned(vehicle);
         }
     }
 
     public void stopSpawning() {
         if (executorService != null) {
-            executorService.shutdown();
+            executorService.shutdownNow();
         }
     }
 
     public void stopAllVehiclesAndSpawning() {
         stopSpawning();
-        synchronized (vehicles) {
-            for (Vehicle vehicle : vehicles) {
-                vehicle.stop();
+        synchronized (this) {
+            int slotLimit = vehicles.getSlotLimit();
+            for (int id = 0; id < slotLimit; id++) {
+                Vehicle vehicle = vehicles.get(id);
+                if (vehicle != null) {
+                    vehicle.stop();
+                }
             }
             vehicles.clear();
         }
     }
 
-    public List<Vehicle> getVehicles() {
+    public VehicleStore getVehicles() {
         return vehicles;
     }
 
+    public long getSpawnInterval() {
+        return spawnInterval;
+    }
+
     public void setSpawnInterval(long interval) {
         this.spawnInterval = interval;
         restartSpawning();
@@ -155,7 +189,7 @@ public class VehicleSpawner {
 
     private void restartSpawning() {
         stopSpawning();
-        executorService = Executors.newScheduledThreadPool(4);
+        executorService = Executors.newSingleThreadExecutor();
         startSpawning();
     }
 
@@ -0,0 +1,135 @@
+package com.github.nxmbit.ferriessimulator;
+
+import java.util.Arrays;
+
+/*
+   Store of the live vehicles, sized for the vehicle limit. The speed and color of every
+   vehicle, the only fields other threads read (vehicles behind it and the
+   snapshot capture), are kept in parallel primitive arrays indexed by the
+   vehicle id, so they can be read without locking. Ids are slots that
+   get reused through a free-list, which keeps add, remove and lookup by id
+   O(1) and allocation-free. Raising the limit grows the arrays to the new
+   capacity, readers pick up the new arrays through the volatile fields.
+*/
+public class VehicleStore {
+    private static final int NO_SLOT = -1;
+
+    private volatile Vehicle[] vehicles;
+    private volatile double[] speed;
+    private volatile byte[] colorIndex;
+
+    private int[] nextFree; // only used while holding the lock
+    private int freeHead;
+    private int slotLimit; // every used slot is below this index
+    private volatile int size;
+
+    public VehicleStore(int capacity) {
+        this.vehicles = new Vehicle[capacity];
+        this.speed = new double[capacity];
+        this.colorIndex = new byte[capacity];
+        this.nextFree = new int[capacity];
+        this.slotLimit = 0;
+        this.size = 0;
+        clearFreeList();
+    }
+
+    private void clearFreeList() {
+        for (int i = 0; i < nextFree.length - 1; i++) {
+            nextFree[i] = i + 1;
+        }
+        if (nextFree.length > 0) {
+            nextFree[nextFree.length - 1] = NO_SLOT;
+        }
+        freeHead = nextFree.length > 0 ? 0 : NO_SLOT;
+    }
+
+    // Grows the store so it holds at least capacity vehicles, it never shrinks. A speed published
+    // during the copy is lost until that vehicle's next step
+    public synchronized void ensureCapacity(int capacity) {
+        int oldCapacity = vehicles.length;
+        if (capacity <= oldCapacity) {
+            return;
+        }
+        speed = Arrays.copyOf(speed, capacity);
+        colorIndex = Arrays.copyOf(colorIndex, capacity);
+        nextFree = Arrays.copyOf(nextFree, capacity);
+        vehicles = Arrays.copyOf(vehicles, capacity); // last, so a reader that sees the new ids sees the other arrays too
+
+        // The new slots go to the front of the free-list
+        for (int i = oldCapacity; i < capacity - 1; i++) {
+            nextFree[i] = i + 1;
+        }
+        nextFree[capacity - 1] = freeHead;
+        freeHead = oldCapacity;
+    }
+
+    // Assigns an id to the vehicle and returns it
+    public synchronized int add(Vehicle vehicle, double speed, int colorIndex) {
+        if (freeHead == NO_SLOT) {
+            throw new IllegalStateException("Vehicle store is full, capacity: " + vehicles.length);
+        }
+        int id = freeHead;
+        freeHead = nextFree[id];
+        nextFree[id] = NO_SLOT;
+
+        vehicle.setId(id);
+        this.vehicles[id] = vehicle;
+        this.speed[id] = speed;
+        this.colorIndex[id] = (byte) colorIndex;
+        slotLimit = Math.max(slotLimit, id + 1);
+        size++; // volatile write publishes the slot to lock-free readers
+        return id;
+    }
+
+    public synchronized void remove(int id) {
+        if (vehicles[id] == null) {
+            return;
+        }
+        vehicles[id] = null;
+        nextFree[id] = freeHead;
+        freeHead = id;
+        size--;
+    }
+
+    public synchronized void clear() {
+        for (int i = 0; i < slotLimit; i++) {
+            vehicles[i] = null;
+        }
+        clearFreeList();
+        slotLimit = 0;
+        size = 0;
+    }
+
+    // Called by the owning vehicle after each step
+    public void updateSpeed(int id, double speed) {
+        this.speed[id] = speed;
+    }
+
+    public Vehicle get(int id) {
+        return vehicles[id];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getCapacity() {
+        return vehicles.length;
+    }
+
+    // Upper bound for iterating over ids, slots below it may be empty
+    public int getSlotLimit() {
+        if (size == 0) { // volatile read, pairs with the write in add
+            return 0;
+        }
+        return slotLimit;
+    }
+
+    public double getSpeed(int id) {
+        return speed[id];
+    }
+
+    public int getColorIndex(int id) {
+        return colorIndex[id];
+    }
+}
@@ -0,0 +1,103 @@
+package com.github.nxmbit.ferriessimulator;
+
+import javafx.geometry.Rectangle2D;
+
+/*
+   The part of the map that is on screen. The map is laid out at the base
+   tile size that fits the whole grid into the pane, the viewport scales it
+   by the zoom and shifts it by the pan offset:
+   screen = map * zoom - offset. Renderers only draw and update the cells
+   and ferries inside getVisibleCells and getVisibleBounds, so the cost of a
+   frame depends on what is on screen and not on the size of the map.
+*/
+public class Viewport {
+    public static final double MIN_ZOOM = 1;
+    public static final double MAX_ZOOM = 64;
+
+    private double zoom;
+    private double offsetX;
+    private double offsetY;
+    private double width;
+    private double height;
+    private double contentWidth;
+    private double contentHeight;
+
+    public Viewport() {
+        this.zoom = MIN_ZOOM;
+    }
+
+    public void setSize(double width, double height) {
+        this.width = width;
+        this.height = height;
+        clampOffset();
+    }
+
+    // Size of the whole map at zoom 1
+    public void setContentSize(double contentWidth, double contentHeight) {
+        this.contentWidth = contentWidth;
+        this.contentHeight = contentHeight;
+        clampOffset();
+    }
+
+    // Keeps the map point under (screenX, screenY) in place, so the zoom follows the cursor
+    public void zoomAt(double factor, double screenX, double screenY) {
+        double newZoom = Math.clamp(zoom * factor, MIN_ZOOM, MAX_ZOOM);
+        double mapX = (screenX + offsetX) / zoom;
+        double mapY = (screenY + offsetY) / zoom;
+        zoom = newZoom;
+        offsetX = mapX * zoom - screenX;
+        offsetY = mapY * zoom - screenY;
+        clampOffset();
+    }
+
+    public void panBy(double dx, double dy) {
+        offsetX -= dx;
+        offsetY -= dy;
+        clampOffset();
+    }
+
+    public void reset() {
+        zoom = MIN_ZOOM;
+        offsetX = 0;
+        offsetY = 0;
+    }
+
+    private void clampOffset() {
+        offsetX = Math.clamp(offsetX, 0, Math.max(0, contentWidth * zoom - width));
+        offsetY = Math.clamp(offsetY, 0, Math.max(0, contentHeight * zoom - height));
+    }
+
+    public double getZoom() {
+        return zoom;
+    }
+
+    public double getOffsetX() {
+        return offsetX;
+    }
+
+    public double getOffsetY() {
+        return offsetY;
+    }
+
+    public double getWidth() {
+        return width;
+    }
+
+    public double getHeight() {
+        return height;
+    }
+
+    // Visible part of the map in map coordinates (zoom 1)
+    public Rectangle2D getVisibleBounds() {
+        return new Rectangle2D(offsetX / zoom, offsetY / zoom, width / zoom, height / zoom);
+    }
+
+    public CellRange getVisibleCells(double tileSize, int gridWidth, int gridHeight) {
+        Rectangle2D bounds = getVisibleBounds();
+        return new CellRange(
+                Math.max(0, (int) Math.floor(bounds.getMinX() / tileSize)),
+                Math.max(0, (int) Math.floor(bounds.getMinY() / tileSize)),
+                Math.min(gridWidth - 1, (int) Math.floor(bounds.getMaxX() / tileSize)),
+                Math.min(gridHeight - 1, (int) Math.floor(bounds.getMaxY() / tileSize)));
+    }
+}
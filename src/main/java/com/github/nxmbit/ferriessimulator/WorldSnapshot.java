@@ -0,0 +1,123 @@
+package com.github.nxmbit.ferriessimulator;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/*
+   Compact copy of everything that changes on the map: the color of the
+   vehicle in every cell (or NO_VEHICLE) and the latest state of every ferry.
+   For drawing the map zoomed out it also holds the number of vehicles in
+   every DENSITY_BLOCK_SIZE x DENSITY_BLOCK_SIZE block of cells and how full
+   the entering queue of every dock is. Snapshots are filled by
+   WorldSnapshotBuffer and are not modified while the renderer holds them.
+*/
+public class WorldSnapshot {
+    public static final byte NO_VEHICLE = -1;
+    public static final int DENSITY_BLOCK_SIZE = 4;
+    public static final int DOCK_COUNT = 2; // docks have the ids 1 and 2
+
+    private final byte[] vehicleColors;
+    private final FerryUpdate[] ferries;
+    private final int blockColumns;
+    private final int blockRows;
+    private final int[] blockVehicles;
+    private final double[] dockQueueFill;
+    private long sequence;
+    private long simulatedTime;
+
+    public WorldSnapshot(int gridWidth, int gridHeight, int maxFerries) {
+        this.vehicleColors = new byte[gridWidth * gridHeight];
+        this.ferries = new FerryUpdate[maxFerries];
+        this.blockColumns = (gridWidth + DENSITY_BLOCK_SIZE - 1) / DENSITY_BLOCK_SIZE;
+        this.blockRows = (gridHeight + DENSITY_BLOCK_SIZE - 1) / DENSITY_BLOCK_SIZE;
+        this.blockVehicles = new int[blockColumns * blockRows];
+        this.dockQueueFill = new double[DOCK_COUNT];
+        Arrays.fill(vehicleColors, NO_VEHICLE);
+    }
+
+    void fill(byte[] vehicleColors, FerryUpdate[] ferries, int[] blockVehicles, double[] dockQueueFill,
+              long sequence, long simulatedTime) {
+        System.arraycopy(vehicleColors, 0, this.vehicleColors, 0, vehicleColors.length);
+        System.arraycopy(ferries, 0, this.ferries, 0, ferries.length);
+        System.arraycopy(blockVehicles, 0, this.blockVehicles, 0, blockVehicles.length);
+        System.arraycopy(dockQueueFill, 0, this.dockQueueFill, 0, dockQueueFill.length);
+        this.sequence = sequence;
+        this.simulatedTime = simulatedTime;
+    }
+
+    // Makes target an independent copy of this snapshot, for readers that hold on to it longer than the renderer
+    public void copyInto(WorldSnapshot target) {
+        target.fill(vehicleColors, ferries, blockVehicles, dockQueueFill, sequence, simulatedTime);
+    }
+
+    // Index of the density block the cell (x, y) belongs to
+    public int blockIndex(int x, int y) {
+        return (y / DENSITY_BLOCK_SIZE) * blockColumns + x / DENSITY_BLOCK_SIZE;
+    }
+
+    public int getBlockColumns() {
+        return blockColumns;
+    }
+
+    public int getBlockRows() {
+        return blockRows;
+    }
+
+    public int getBlockCount() {
+        return blockVehicles.length;
+    }
+
+    public int getBlockVehicles(int blockIndex) {
+        return blockVehicles[blockIndex];
+    }
+
+    // Share of the dock's entering queue that is taken, from 0 to 1
+    public double getDockQueueFill(int dockId) {
+        return dockQueueFill[dockId - 1];
+    }
+
+    // Color index of the vehicle in the cell with the given grid index, or NO_VEHICLE
+    public byte getVehicleColor(int index) {
+        return vehicleColors[index];
+    }
+
+    // Latest state of the ferry with the given update slot, null if it hasn't published any yet
+    public FerryUpdate getFerry(int slot) {
+        return ferries[slot];
+    }
+
+    // Increases with every published snapshot
+    public long getSequence() {
+        return sequence;
+    }
+
+    public long getSimulatedTime() {
+        return simulatedTime;
+    }
+
+    // Hands every cell whose color differs from previous to the consumer and brings previous up to date
+    public void diffInto(byte[] previous, IntConsumer changedCells) {
+        int length = vehicleColors.length;
+        int from = 0;
+        int offset;
+        while (from < length && (offset = Arrays.mismatch(vehicleColors, from, length, previous, from, length)) >= 0) {
+            int index = from + offset;
+            previous[index] = vehicleColors[index];
+            changedCells.accept(index);
+            from = index + 1;
+        }
+    }
+
+    // Same as diffInto, for the vehicle counts of the density blocks
+    public void diffBlocksInto(int[] previous, IntConsumer changedBlocks) {
+        int length = blockVehicles.length;
+        int from = 0;
+        int offset;
+        while (from < length && (offset = Arrays.mismatch(blockVehicles, from, length, previous, from, length)) >= 0) {
+            int index = from + offset;
+            previous[index] = blockVehicles[index];
+            changedBlocks.accept(index);
+            from = index + 1;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.github.nxmbit.ferriessimulator;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+   Hands consistent WorldSnapshots from the simulation to the renderer
+   without either side locking or waiting. The writer fills a back snapshot
+   and swaps it with the shared one, the reader swaps the shared one with its
+   front snapshot when a newer one was published. A third snapshot (rather
+   than plain double buffering) is what lets the writer publish again while
+   the renderer is still painting the previous one.
+
+   The writer keeps the current vehicle colors and the vehicle counts of the
+   density blocks up to date from the grid's dirty cells, so a capture costs
+   a few array copies plus the cells that changed, the grid is never rescanned.
+*/
+public class WorldSnapshotBuffer {
+    private static final int INDEX_MASK = 3;
+    private static final int FRESH = 4; // set while the shared snapshot hasn't been taken by the reader
+
+    private final WorldSnapshot[] snapshots;
+    private final AtomicInteger shared;
+    private int back; // only used by the writer
+    private int front; // only used by the reader
+
+    private final byte[] vehicleColors;
+    private final FerryUpdate[] ferries;
+    private final int[] blockVehicles;
+    private final double[] dockQueueFill;
+    private long sequence;
+    private long captureTime; // simulated time of the last capture
+
+    public WorldSnapshotBuffer(int gridWidth, int gridHeight, int maxFerries) {
+        this.snapshots = new WorldSnapshot[3];
+        for (int i = 0; i < snapshots.length; i++) {
+            snapshots[i] = new WorldSnapshot(gridWidth, gridHeight, maxFerries);
+        }
+        this.front = 0;
+        this.shared = new AtomicInteger(1);
+        this.back = 2;
+        this.vehicleColors = new byte[gridWidth * gridHeight];
+        this.ferries = new FerryUpdate[maxFerries];
+        this.blockVehicles = new int[snapshots[0].getBlockCount()];
+        this.dockQueueFill = new double[WorldSnapshot.DOCK_COUNT];
+        Arrays.fill(vehicleColors, WorldSnapshot.NO_VEHICLE);
+    }
+
+    // Must always be called from the same thread, the one driving the simulation, and so must the capture copies below
+    public void capture(SimulationGrid grid, VehicleStore vehicles, FerryUpdateBuffer ferryUpdates, Map<Integer, Dock> docks,
+                        long simulatedTime) {
+        OccupancyIndex occupancy = grid.getOccupancy();
+        WorldSnapshot layout = snapshots[back]; // every snapshot has the same block layout
+        int width = grid.getWidth();
+        grid.getDirtyCells().drain(index -> {
+            int x = index % width;
+            int y = index / width;
+            int vehicleId = occupancy.get(x, y);
+            byte color = vehicleId == OccupancyIndex.EMPTY ? WorldSnapshot.NO_VEHICLE : (byte) vehicles.getColorIndex(vehicleId);
+            boolean wasOccupied = vehicleColors[index] != WorldSnapshot.NO_VEHICLE;
+            boolean isOccupied = color != WorldSnapshot.NO_VEHICLE;
+            if (wasOccupied != isOccupied) {
+                blockVehicles[layout.blockIndex(x, y)] += isOccupied ? 1 : -1;
+            }
+            vehicleColors[index] = color;
+        });
+        ferryUpdates.drain((update, slot) -> ferries[slot] = update);
+        for (Map.Entry<Integer, Dock> entry : docks.entrySet()) {
+            dockQueueFill[entry.getKey() - 1] = entry.getValue().getEnteringQueueFill();
+        }
+
+        captureTime = simulatedTime;
+        snapshots[back].fill(vehicleColors, ferries, blockVehicles, dockQueueFill, ++sequence, simulatedTime);
+        back = shared.getAndSet(back | FRESH) & INDEX_MASK;
+    }
+
+    // Writer side copies of the last capture, for the frame exporter, which must not take snapshots from the reader
+    public long getCaptureTime() {
+        return captureTime;
+    }
+
+    public void copyCaptureInto(WorldSnapshot target) {
+        target.fill(vehicleColors, ferries, blockVehicles, dockQueueFill, sequence, captureTime);
+    }
+
+    // The most recently published snapshot, it stays untouched until the next call
+    public WorldSnapshot latest() {
+        if ((shared.get() & FRESH) != 0) {
+            front = shared.getAndSet(front) & INDEX_MASK;
+        }
+        return snapshots[front];
+    }
+}
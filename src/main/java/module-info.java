@@ -1,6 +1,7 @@
 module com.github.nxmbit.ferriessimulator {
     requires javafx.controls;
     requires javafx.fxml;
+    requires java.desktop;
     requires org.json;
 
 